@@ -0,0 +1,57 @@
+package toby.bench;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import toby.user.dao.PooledDataSource;
+import toby.user.dao.UserDaoJdbc;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// 벤치마크마다 따로 쓰는 H2 메모리 DB. MySQL 호환 모드로 실제 스키마와 같은 SQL을 실행한다.
+public class BenchmarkDatabase {
+    public static PooledDataSource create(String name) {
+        SimpleDriverDataSource driverDataSource = new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        PooledDataSource dataSource = new PooledDataSource(driverDataSource);
+        dataSource.setMaxSize(Runtime.getRuntime().availableProcessors() * 2);
+        createSchema(dataSource);
+        return dataSource;
+    }
+
+    public static void createSchema(DataSource dataSource) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("drop table if exists users");
+        jdbcTemplate.update("create table users (" +
+                "id varchar(20) primary key, name varchar(20) not null, password varchar(20) not null, " +
+                "level tinyint not null default 1, login int not null default 0, recommend int not null default 0, " +
+                "email varchar(100))");
+    }
+
+    public static UserDaoJdbc userDao(DataSource dataSource) {
+        UserDaoJdbc userDao = new UserDaoJdbc();
+        userDao.setDataSource(dataSource);
+        return userDao;
+    }
+
+    // login/recommend를 고르게 흩어 놓아 업그레이드 대상이 일정 비율로 생기게 한다.
+    public static void load(UserDaoJdbc userDao, int count) {
+        List<User> chunk = new ArrayList<>(10000);
+        for(int i = 0; i < count; i++){
+            chunk.add(new User(id(i), "name" + i, "password", Level.valueOf(i % 3 + 1),
+                    i % 100, i % 60, "user" + i + "@email.com"));
+            if(chunk.size() == 10000){
+                userDao.addAll(chunk);
+                chunk.clear();
+            }
+        }
+        if(!chunk.isEmpty()) userDao.addAll(chunk);
+    }
+
+    public static String id(int i) {
+        return String.format("u%07d", i);
+    }
+}
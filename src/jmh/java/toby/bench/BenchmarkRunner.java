@@ -0,0 +1,20 @@
+package toby.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// 전체 벤치마크를 GC 프로파일러(할당량 측정)와 함께 실행한다.
+// 인자로 정규식을 주면 해당 벤치마크만 실행한다. 예) UserDaoBenchmark.get
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "toby.bench.*")
+                .addProfiler(GCProfiler.class)
+                .result("bench_output.txt")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,45 @@
+package toby.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import toby.user.dao.DaoFactory;
+import toby.user.dao.UserDao;
+
+import java.util.concurrent.TimeUnit;
+
+// 컨텍스트를 띄우고 userDao를 한 번 꺼낸 뒤 닫는 시간을 잰다.
+// 두 설정 모두 커넥션 풀을 채우지 않고 등록하므로 DB 없이 돌고, 설정 처리 비용만 비교된다.
+// 포크마다 첫 실행은 클래스 로딩 비용이 포함되므로, 서버 기동 시간은 포크 첫 측정값을, 테스트 컨텍스트는 나머지를 본다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 20)
+@Fork(5)
+public class ContextStartupBenchmark {
+    @Param({"xml", "java"})
+    String config;
+
+    @Benchmark
+    public UserDao startAndClose() {
+        ConfigurableApplicationContext context = config.equals("xml")
+                ? new GenericXmlApplicationContext("applicationContext.xml")
+                : new AnnotationConfigApplicationContext(DaoFactory.class);
+        try{
+            return context.getBean("userDao", UserDao.class);
+        }finally{
+            context.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package toby.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import toby.user.dao.JdbcContext;
+import toby.user.dao.PooledDataSource;
+import toby.user.dao.StatementStrategy;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// 같은 SQL을 반복 실행하는 전략으로 JdbcContext의 커넥션/문장 처리 비용을 잰다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JdbcContextBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int tableSize;
+
+    @Param({"0", "32"})
+    int statementCacheSize;
+
+    PooledDataSource dataSource;
+    JdbcContext jdbcContext;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.create("jdbcContext" + tableSize);
+        BenchmarkDatabase.load(BenchmarkDatabase.userDao(dataSource), tableSize);
+
+        jdbcContext = new JdbcContext();
+        jdbcContext.setDataSource(dataSource);
+        jdbcContext.setStatementCacheSize(statementCacheSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void workWithStatementStrategy() throws SQLException {
+        final String id = BenchmarkDatabase.id(ThreadLocalRandom.current().nextInt(tableSize));
+        jdbcContext.workWithStatementStrategy(new StatementStrategy() {
+            public PreparedStatement makePreparedStatement(java.sql.Connection c) throws SQLException {
+                PreparedStatement ps = c.prepareStatement("update users set login = login + 1 where id = ?");
+                ps.setString(1, id);
+                return ps;
+            }
+        });
+    }
+}
@@ -0,0 +1,75 @@
+package toby.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import toby.user.dao.PooledDataSource;
+import toby.user.dao.UserDaoJdbc;
+import toby.user.domain.User;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserDaoBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int tableSize;
+
+    PooledDataSource dataSource;
+    UserDaoJdbc userDao;
+    final AtomicInteger nextId = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.create("userDao" + tableSize);
+        userDao = BenchmarkDatabase.userDao(dataSource);
+        BenchmarkDatabase.load(userDao, tableSize);
+        nextId.set(tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void add() {
+        int i = nextId.getAndIncrement();
+        userDao.add(new User(BenchmarkDatabase.id(i), "name", "password", toby.user.domain.Level.BASIC, 0, 0, "added@email.com"));
+    }
+
+    @Benchmark
+    public User get() {
+        return userDao.get(BenchmarkDatabase.id(ThreadLocalRandom.current().nextInt(tableSize)));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<User> getAll() {
+        return userDao.getAll();
+    }
+
+    @Benchmark
+    public void update() {
+        User user = userDao.get(BenchmarkDatabase.id(ThreadLocalRandom.current().nextInt(tableSize)));
+        user.setLogin(user.getLogin() + 1);
+        userDao.update(user);
+    }
+}
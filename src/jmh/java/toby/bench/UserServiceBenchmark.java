@@ -0,0 +1,81 @@
+package toby.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import toby.user.dao.PooledDataSource;
+import toby.user.service.DummyMailSender;
+import toby.user.service.UserServiceImpl;
+import toby.user.service.UserServiceTx;
+
+import java.util.concurrent.TimeUnit;
+
+// 매 실행 전에 모든 사용자를 처음 레벨로 되돌린 뒤 한 번의 전체 업그레이드 시간을 잰다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UserServiceBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int tableSize;
+
+    @Param({"all", "page", "database", "parallel"})
+    String mode;
+
+    PooledDataSource dataSource;
+    JdbcTemplate jdbcTemplate;
+    UserServiceTx userService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.create("userService" + tableSize);
+        BenchmarkDatabase.load(BenchmarkDatabase.userDao(dataSource), tableSize);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        UserServiceImpl userServiceImpl = new UserServiceImpl();
+        userServiceImpl.setUserDao(BenchmarkDatabase.userDao(dataSource));
+        userServiceImpl.setMailSender(new DummyMailSender());
+        userServiceImpl.setTransactionManager(transactionManager);
+
+        userService = new UserServiceTx();
+        userService.setUserService(userServiceImpl);
+        userService.setTransactionManager(transactionManager);
+    }
+
+    // BASIC과 SILVER를 반씩 섞어 두 가지 업그레이드가 모두 일어나게 한다.
+    @Setup(Level.Invocation)
+    public void resetLevels() {
+        jdbcTemplate.update("update users set level = case when mod(recommend, 2) = 0 then 1 else 2 end");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void upgradeLevels() {
+        switch (mode){
+            case "all": userService.upgradeLevels(); break;
+            case "page": userService.upgradeLevelsByPage(1000); break;
+            case "database": userService.upgradeLevelsInDatabase(); break;
+            case "parallel": userService.upgradeLevelsInParallel(10000); break;
+        }
+    }
+}
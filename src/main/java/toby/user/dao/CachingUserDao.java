@@ -0,0 +1,364 @@
+package toby.user.dao;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+import toby.user.domain.UserActivity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// get(id) 결과를 maxSize 건까지 보관하는 UserDao 데코레이터. 쓰기 메소드는 관련된 캐시 항목을 무효화한다.
+// 트랜잭션 안에서는 캐시를 채우지 않고, 쓰기가 있었으면 트랜잭션이 끝날 때 한 번 더 무효화해서
+// 커밋 전에 다른 스레드가 읽어 간 이전 값이 남지 않게 한다.
+public class CachingUserDao implements UserDao {
+    public enum EvictionPolicy { LRU, LFU }
+
+    private final UserDao userDao;
+    private final Store store;
+    private long ttlMillis = 0;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingUserDao(UserDao userDao, int maxSize, EvictionPolicy evictionPolicy) {
+        if(maxSize <= 0){
+            throw new IllegalArgumentException("maxSize는 1 이상이어야 합니다: " + maxSize);
+        }
+        this.userDao = userDao;
+        this.store = (evictionPolicy == EvictionPolicy.LFU) ? new LfuStore(maxSize) : new LruStore(maxSize);
+    }
+
+    // 0이면 만료 시간 없이 보관한다.
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public User get(String id) {
+        lock.lock();
+        try{
+            Entry entry = store.get(id);
+            if(entry != null && (entry.expiresAt == 0 || entry.expiresAt > System.currentTimeMillis())){
+                hits.increment();
+                return copy(entry.user);
+            }
+            if(entry != null) store.remove(id);
+        }finally{
+            lock.unlock();
+        }
+
+        misses.increment();
+        long version = invalidations.get();
+        User user = userDao.get(id);
+        if(!TransactionSynchronizationManager.isActualTransactionActive()){
+            put(id, user, version);
+        }
+        return user;
+    }
+
+    public List<User> getByIds(Collection<String> ids) {
+        return userDao.getByIds(ids);
+    }
+
+    public void add(User user) {
+        userDao.add(user);
+        invalidate(Collections.singletonList(user.getId()));
+    }
+
+    public void addAll(Collection<User> users) {
+        userDao.addAll(users);
+        invalidate(idsOf(users));
+    }
+
+    public void update(User user) {
+        userDao.update(user);
+        invalidate(Collections.singletonList(user.getId()));
+    }
+
+    public void updateAll(List<User> users) {
+        userDao.updateAll(users);
+        invalidate(idsOf(users));
+    }
+
+    public void updateLevels(List<User> users) {
+        userDao.updateLevels(users);
+        invalidate(idsOf(users));
+    }
+
+    public void incrementCounts(List<UserActivity> activities) {
+        userDao.incrementCounts(activities);
+        List<String> ids = new ArrayList<>(activities.size());
+        for(UserActivity activity : activities) ids.add(activity.getId());
+        invalidate(ids);
+    }
+
+    public List<User> upgradeLevels(Level level, int minLogin, int minRecommend) {
+        List<User> upgraded = userDao.upgradeLevels(level, minLogin, minRecommend);
+        invalidate(idsOf(upgraded));
+        return upgraded;
+    }
+
+    public void deleteAll() {
+        userDao.deleteAll();
+        invalidate(null);
+    }
+
+    public List<User> getAll() {
+        return userDao.getAll();
+    }
+
+    public void forEach(Consumer<? super User> action) {
+        userDao.forEach(action);
+    }
+
+    public List<User> getAllAfter(String id, int limit) {
+        return userDao.getAllAfter(id, limit);
+    }
+
+    public List<User> getAllBetween(String fromId, String toId) {
+        return userDao.getAllBetween(fromId, toId);
+    }
+
+    public List<String> getIdBoundaries(int partitionSize) {
+        return userDao.getIdBoundaries(partitionSize);
+    }
+
+    public Integer getCount() {
+        return userDao.getCount();
+    }
+
+    public EnumMap<Level, Long> getCountsByLevel() {
+        return userDao.getCountsByLevel();
+    }
+
+    public List<User> getUpgradeCandidates(Level level, int minLogin, int minRecommend, int limit) {
+        return userDao.getUpgradeCandidates(level, minLogin, minRecommend, limit);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public int getSize() {
+        lock.lock();
+        try{
+            return store.size();
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    // DB에서 읽는 사이에 무효화가 있었으면 읽은 값이 이미 낡았을 수 있으므로 넣지 않는다.
+    private void put(String id, User user, long version) {
+        lock.lock();
+        try{
+            if(invalidations.get() != version) return;
+            long expiresAt = (ttlMillis > 0) ? System.currentTimeMillis() + ttlMillis : 0;
+            if(store.put(id, new Entry(copy(user), expiresAt))) evictions.increment();
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    // ids가 null이면 전부 비운다.
+    private void invalidate(final List<String> ids) {
+        evict(ids);
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(ids);
+                }
+            });
+        }
+    }
+
+    private void evict(List<String> ids) {
+        lock.lock();
+        try{
+            invalidations.incrementAndGet();
+            if(ids == null){
+                store.clear();
+            }else{
+                for(String id : ids) store.remove(id);
+            }
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    private List<String> idsOf(Collection<User> users) {
+        List<String> ids = new ArrayList<>(users.size());
+        for(User user : users) ids.add(user.getId());
+        return ids;
+    }
+
+    // 호출한 쪽이 돌려받은 User를 고쳐도 캐시에 든 값이 바뀌지 않도록 항상 복사본을 주고받는다.
+    private static User copy(User user) {
+        return new User(user.getId(), user.getName(), user.getPassword(), user.getLevel(),
+                user.getLogin(), user.getRecommend(), user.getEmail());
+    }
+
+    private static class Entry {
+        final User user;
+        final long expiresAt;
+        int frequency;
+
+        Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // 아래 구현은 모두 lock을 잡은 상태에서만 호출된다.
+    private interface Store {
+        Entry get(String id);
+        boolean put(String id, Entry entry);   // 다른 항목을 밀어냈으면 true
+        void remove(String id);
+        void clear();
+        int size();
+    }
+
+    private static class LruStore implements Store {
+        private final int maxSize;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        LruStore(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Entry get(String id) {
+            return entries.get(id);
+        }
+
+        public boolean put(String id, Entry entry) {
+            entries.put(id, entry);
+            if(entries.size() <= maxSize) return false;
+            Iterator<String> eldest = entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            return true;
+        }
+
+        public void remove(String id) {
+            entries.remove(id);
+        }
+
+        public void clear() {
+            entries.clear();
+        }
+
+        public int size() {
+            return entries.size();
+        }
+    }
+
+    // 사용 횟수별로 id를 묶어 두고, 가장 적게 쓰인 묶음에서 가장 오래된 항목을 밀어낸다.
+    private static class LfuStore implements Store {
+        private final int maxSize;
+        private final Map<String, Entry> entries = new HashMap<>();
+        private final Map<Integer, LinkedHashSet<String>> frequencies = new HashMap<>();
+        private int minFrequency;
+
+        LfuStore(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Entry get(String id) {
+            Entry entry = entries.get(id);
+            if(entry == null) return null;
+
+            unlink(id, entry.frequency);
+            entry.frequency++;
+            link(id, entry.frequency);
+            if(!frequencies.containsKey(minFrequency)) minFrequency = entry.frequency;
+            return entry;
+        }
+
+        public boolean put(String id, Entry entry) {
+            boolean evicted = false;
+            if(entries.containsKey(id)){
+                remove(id);
+            }else if(entries.size() >= maxSize){
+                evictLeastFrequent();
+                evicted = true;
+            }
+            entry.frequency = 1;
+            entries.put(id, entry);
+            link(id, 1);
+            minFrequency = 1;
+            return evicted;
+        }
+
+        public void remove(String id) {
+            Entry entry = entries.remove(id);
+            if(entry != null) unlink(id, entry.frequency);
+        }
+
+        public void clear() {
+            entries.clear();
+            frequencies.clear();
+            minFrequency = 0;
+        }
+
+        public int size() {
+            return entries.size();
+        }
+
+        private void evictLeastFrequent() {
+            LinkedHashSet<String> ids = frequencies.get(minFrequency);
+            if(ids == null){
+                // remove()로 최소 빈도 묶음이 사라졌으면 다시 찾는다.
+                minFrequency = Collections.min(frequencies.keySet());
+                ids = frequencies.get(minFrequency);
+            }
+            String id = ids.iterator().next();
+            remove(id);
+        }
+
+        private void link(String id, int frequency) {
+            LinkedHashSet<String> ids = frequencies.get(frequency);
+            if(ids == null){
+                ids = new LinkedHashSet<>();
+                frequencies.put(frequency, ids);
+            }
+            ids.add(id);
+        }
+
+        private void unlink(String id, int frequency) {
+            LinkedHashSet<String> ids = frequencies.get(frequency);
+            ids.remove(id);
+            if(ids.isEmpty()) frequencies.remove(frequency);
+        }
+    }
+}
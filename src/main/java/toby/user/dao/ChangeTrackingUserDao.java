@@ -0,0 +1,130 @@
+package toby.user.dao;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+import toby.user.domain.UserActivity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+// 사용자를 추가하거나 수정하는 쓰기마다 그 id를 UserChangeTracker에 기록하는 UserDao 데코레이터.
+// 트랜잭션 안의 쓰기는 커밋된 뒤에 기록해서, 업그레이드 작업이 커밋 전의 값을 읽고 지나가지 않게 한다.
+public class ChangeTrackingUserDao implements UserDao {
+    private final UserDao userDao;
+    private final UserChangeTracker tracker;
+
+    public ChangeTrackingUserDao(UserDao userDao, UserChangeTracker tracker) {
+        this.userDao = userDao;
+        this.tracker = tracker;
+    }
+
+    public void add(User user) {
+        userDao.add(user);
+        markDirty(Collections.singletonList(user.getId()));
+    }
+
+    public void addAll(Collection<User> users) {
+        userDao.addAll(users);
+        markDirty(idsOf(users));
+    }
+
+    public void update(User user) {
+        userDao.update(user);
+        markDirty(Collections.singletonList(user.getId()));
+    }
+
+    public void updateAll(List<User> users) {
+        userDao.updateAll(users);
+        markDirty(idsOf(users));
+    }
+
+    public void updateLevels(List<User> users) {
+        userDao.updateLevels(users);
+        markDirty(idsOf(users));
+    }
+
+    public void incrementCounts(List<UserActivity> activities) {
+        userDao.incrementCounts(activities);
+        List<String> ids = new ArrayList<>(activities.size());
+        for(UserActivity activity : activities) ids.add(activity.getId());
+        markDirty(ids);
+    }
+
+    // SILVER로 올라간 사용자는 바로 GOLD 조건을 만족할 수도 있으므로 다시 평가하게 한다.
+    public List<User> upgradeLevels(Level level, int minLogin, int minRecommend) {
+        List<User> upgraded = userDao.upgradeLevels(level, minLogin, minRecommend);
+        markDirty(idsOf(upgraded));
+        return upgraded;
+    }
+
+    public void deleteAll() {
+        userDao.deleteAll();
+        tracker.clear();
+    }
+
+    public User get(String id) {
+        return userDao.get(id);
+    }
+
+    public List<User> getByIds(Collection<String> ids) {
+        return userDao.getByIds(ids);
+    }
+
+    public List<User> getAll() {
+        return userDao.getAll();
+    }
+
+    public void forEach(Consumer<? super User> action) {
+        userDao.forEach(action);
+    }
+
+    public List<User> getAllAfter(String id, int limit) {
+        return userDao.getAllAfter(id, limit);
+    }
+
+    public List<User> getAllBetween(String fromId, String toId) {
+        return userDao.getAllBetween(fromId, toId);
+    }
+
+    public List<String> getIdBoundaries(int partitionSize) {
+        return userDao.getIdBoundaries(partitionSize);
+    }
+
+    public Integer getCount() {
+        return userDao.getCount();
+    }
+
+    public EnumMap<Level, Long> getCountsByLevel() {
+        return userDao.getCountsByLevel();
+    }
+
+    public List<User> getUpgradeCandidates(Level level, int minLogin, int minRecommend, int limit) {
+        return userDao.getUpgradeCandidates(level, minLogin, minRecommend, limit);
+    }
+
+    private void markDirty(final List<String> ids) {
+        if(ids.isEmpty()) return;
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    tracker.markDirty(ids);
+                }
+            });
+        }else{
+            tracker.markDirty(ids);
+        }
+    }
+
+    private List<String> idsOf(Collection<User> users) {
+        List<String> ids = new ArrayList<>(users.size());
+        for(User user : users) ids.add(user.getId());
+        return ids;
+    }
+}
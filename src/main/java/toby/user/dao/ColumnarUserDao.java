@@ -0,0 +1,378 @@
+package toby.user.dao;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+import toby.user.domain.UserActivity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// 사용자 정보를 필드별 배열에 나눠 담는 메모리 UserDao.
+// level/login/recommend는 기본형 배열에, id는 open addressing 해시 인덱스로 찾고,
+// User 객체는 get()/getAll() 등에서 돌려줄 때만 만든다.
+public class ColumnarUserDao implements UserDao {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int FOR_EACH_PAGE_SIZE = 1000;
+
+    private int size;
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private String[] names = new String[INITIAL_CAPACITY];
+    private String[] passwords = new String[INITIAL_CAPACITY];
+    private String[] emails = new String[INITIAL_CAPACITY];
+    private byte[] levels = new byte[INITIAL_CAPACITY];
+    private int[] logins = new int[INITIAL_CAPACITY];
+    private int[] recommends = new int[INITIAL_CAPACITY];
+
+    // id 해시 인덱스. 행 번호 + 1을 담고 0은 빈 칸이다.
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+
+    // id 순서로 정렬한 행 번호. 추가가 있으면 다음 순서 조회 때 다시 만든다.
+    private int[] sorted = new int[0];
+    private boolean sortedDirty;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void add(User user) {
+        lock.writeLock().lock();
+        try{
+            insert(user);
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAll(Collection<User> users) {
+        lock.writeLock().lock();
+        try{
+            for(User user : users) insert(user);
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    public User get(String id) {
+        lock.readLock().lock();
+        try{
+            int row = find(id);
+            if(row < 0) throw new EmptyResultDataAccessException(1);
+            return toUser(row);
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<User> getByIds(Collection<String> ids) {
+        lock.readLock().lock();
+        try{
+            List<User> users = new ArrayList<>(ids.size());
+            for(String id : ids){
+                int row = find(id);
+                if(row >= 0) users.add(toUser(row));
+            }
+            return users;
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<User> getAll() {
+        return getAllBetween(null, null);
+    }
+
+    // 읽기 잠금을 쥔 채로 action을 부르면 action 안의 쓰기가 막히므로, 한 페이지씩 복사한 뒤 잠금 밖에서 넘긴다.
+    public void forEach(Consumer<? super User> action) {
+        String lastId = null;
+        while(true){
+            List<User> page = getAllAfter(lastId, FOR_EACH_PAGE_SIZE);
+            for(User user : page) action.accept(user);
+            if(page.size() < FOR_EACH_PAGE_SIZE) break;
+            lastId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    public List<User> getAllAfter(String id, int limit) {
+        lock.readLock().lock();
+        try{
+            int[] order = sortedRows();
+            int from = (id == null) ? 0 : upperBound(order, id);
+            int to = (int) Math.min((long) from + limit, order.length);
+            return toUsers(order, from, to);
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<User> getAllBetween(String fromId, String toId) {
+        lock.readLock().lock();
+        try{
+            int[] order = sortedRows();
+            int from = (fromId == null) ? 0 : upperBound(order, fromId);
+            int to = (toId == null) ? order.length : upperBound(order, toId);
+            return toUsers(order, from, Math.max(from, to));
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> getIdBoundaries(int partitionSize) {
+        lock.readLock().lock();
+        try{
+            int[] order = sortedRows();
+            List<String> boundaries = new ArrayList<>();
+            for(int i = partitionSize - 1; i < order.length; i += partitionSize){
+                boundaries.add(ids[order[i]]);
+            }
+            return boundaries;
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    public void deleteAll() {
+        lock.writeLock().lock();
+        try{
+            Arrays.fill(ids, 0, size, null);
+            Arrays.fill(names, 0, size, null);
+            Arrays.fill(passwords, 0, size, null);
+            Arrays.fill(emails, 0, size, null);
+            Arrays.fill(index, 0);
+            size = 0;
+            sorted = new int[0];
+            sortedDirty = false;
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Integer getCount() {
+        lock.readLock().lock();
+        try{
+            return size;
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    // level 열만 훑는다.
+    public EnumMap<Level, Long> getCountsByLevel() {
+        long[] counts = new long[Level.values().length + 1];
+        lock.readLock().lock();
+        try{
+            for(int row = 0; row < size; row++) counts[levels[row]]++;
+        }finally{
+            lock.readLock().unlock();
+        }
+
+        EnumMap<Level, Long> countsByLevel = new EnumMap<>(Level.class);
+        for(Level level : Level.values()) countsByLevel.put(level, counts[level.intValue()]);
+        return countsByLevel;
+    }
+
+    public List<User> getUpgradeCandidates(Level level, int minLogin, int minRecommend, int limit) {
+        lock.readLock().lock();
+        try{
+            List<User> candidates = new ArrayList<>();
+            for(int row : sortedRows()){
+                if(candidates.size() >= limit) break;
+                if(levels[row] == level.intValue() && logins[row] >= minLogin && recommends[row] >= minRecommend){
+                    candidates.add(toUser(row));
+                }
+            }
+            return candidates;
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    public void update(User user) {
+        lock.writeLock().lock();
+        try{
+            int row = find(user.getId());
+            if(row >= 0) set(row, user);
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void updateAll(List<User> users) {
+        lock.writeLock().lock();
+        try{
+            for(User user : users){
+                int row = find(user.getId());
+                if(row >= 0) set(row, user);
+            }
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void updateLevels(List<User> users) {
+        lock.writeLock().lock();
+        try{
+            for(User user : users){
+                int row = find(user.getId());
+                if(row >= 0) levels[row] = (byte) user.getLevel().intValue();
+            }
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void incrementCounts(List<UserActivity> activities) {
+        lock.writeLock().lock();
+        try{
+            for(UserActivity activity : activities){
+                int row = find(activity.getId());
+                if(row >= 0){
+                    logins[row] += activity.getLoginDelta();
+                    recommends[row] += activity.getRecommendDelta();
+                }
+            }
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<User> upgradeLevels(Level level, int minLogin, int minRecommend) {
+        Level nextLevel = level.nextLevel();
+        if(nextLevel == null){
+            throw new IllegalArgumentException(level + "은 업그레이드가 불가합니다.");
+        }
+
+        lock.writeLock().lock();
+        try{
+            List<User> upgraded = new ArrayList<>();
+            for(int row : sortedRows()){
+                if(levels[row] == level.intValue() && logins[row] >= minLogin && recommends[row] >= minRecommend){
+                    levels[row] = (byte) nextLevel.intValue();
+                    upgraded.add(toUser(row));
+                }
+            }
+            return upgraded;
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(User user) {
+        if(find(user.getId()) >= 0){
+            throw new DuplicateKeyException("Duplicate entry '" + user.getId() + "' for key 'PRIMARY'");
+        }
+        if(size == ids.length) grow();
+
+        int row = size++;
+        ids[row] = user.getId();
+        set(row, user);
+        indexInsert(row);
+        sortedDirty = true;
+    }
+
+    private void set(int row, User user) {
+        names[row] = user.getName();
+        passwords[row] = user.getPassword();
+        emails[row] = user.getEmail();
+        levels[row] = (byte) user.getLevel().intValue();
+        logins[row] = user.getLogin();
+        recommends[row] = user.getRecommend();
+    }
+
+    private User toUser(int row) {
+        return new User(ids[row], names[row], passwords[row], Level.valueOf(levels[row]),
+                logins[row], recommends[row], emails[row]);
+    }
+
+    private List<User> toUsers(int[] order, int from, int to) {
+        List<User> users = new ArrayList<>(to - from);
+        for(int i = from; i < to; i++){
+            users.add(toUser(order[i]));
+        }
+        return users;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        names = Arrays.copyOf(names, capacity);
+        passwords = Arrays.copyOf(passwords, capacity);
+        emails = Arrays.copyOf(emails, capacity);
+        levels = Arrays.copyOf(levels, capacity);
+        logins = Arrays.copyOf(logins, capacity);
+        recommends = Arrays.copyOf(recommends, capacity);
+
+        index = new int[capacity * 2];
+        for(int row = 0; row < size; row++){
+            indexInsert(row);
+        }
+    }
+
+    // 인덱스 크기는 항상 행 용량의 두 배라서 채움률이 1/2을 넘지 않는다.
+    private int find(String id) {
+        int mask = index.length - 1;
+        for(int slot = hash(id) & mask; index[slot] != 0; slot = (slot + 1) & mask){
+            int row = index[slot] - 1;
+            if(ids[row].equals(id)) return row;
+        }
+        return -1;
+    }
+
+    private void indexInsert(int row) {
+        int mask = index.length - 1;
+        int slot = hash(ids[row]) & mask;
+        while(index[slot] != 0){
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = row + 1;
+    }
+
+    private static int hash(String id) {
+        int h = id.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    // 읽기 락만 잡은 상태에서 호출되면 정렬을 다시 만들기 위해 잠시 쓰기 락으로 바꾼다.
+    private int[] sortedRows() {
+        if(!sortedDirty) return sorted;
+
+        boolean readLocked = lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread();
+        if(readLocked){
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+        }
+        try{
+            if(sortedDirty){
+                Integer[] rows = new Integer[size];
+                for(int row = 0; row < size; row++) rows[row] = row;
+                Arrays.sort(rows, (a, b) -> ids[a].compareTo(ids[b]));
+
+                int[] order = new int[size];
+                for(int i = 0; i < size; i++) order[i] = rows[i];
+                sorted = order;
+                sortedDirty = false;
+            }
+            return sorted;
+        }finally{
+            if(readLocked){
+                lock.readLock().lock();
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // id보다 큰 첫 위치
+    private int upperBound(int[] order, String id) {
+        int low = 0, high = order.length;
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(ids[order[mid]].compareTo(id) <= 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+}
@@ -3,9 +3,10 @@ package toby.user.dao;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
 
 public class CountingConnectionMaker implements ConnectionMaker{
-    int counter = 0;
+    private final LongAdder counter = new LongAdder();
     private DataSource dataSource;
 
     public CountingConnectionMaker(DataSource dataSource) {
@@ -13,11 +14,11 @@ public class CountingConnectionMaker implements ConnectionMaker{
     }
 
     public Connection makeConnection() throws ClassNotFoundException, SQLException{
-        this.counter++;
+        this.counter.increment();
         return dataSource.getConnection();
     }
 
     public int getCounter() {
-        return counter;
+        return (int) counter.sum();
     }
 }
@@ -6,23 +6,22 @@ import org.springframework.jdbc.datasource.SimpleDriverDataSource;
 
 import javax.sql.DataSource;
 
+@Configuration
 public class CountingDaoFactory {
-
+    @Bean
     public UserDaoJdbc userDao() {
         UserDaoJdbc userDao = new UserDaoJdbc();
         userDao.setDataSource(dataSource());
         return userDao;
     }
 
-
+    @Bean
     public ConnectionMaker connectionMaker(){
         return new CountingConnectionMaker(dataSource());
     }
 
-
+    @Bean
     public DataSource dataSource(){
         return new SimpleDriverDataSource();
     }
-
-
 }
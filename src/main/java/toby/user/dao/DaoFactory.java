@@ -1,21 +1,122 @@
 package toby.user.dao;
 
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.mail.MailSender;
+import org.springframework.transaction.PlatformTransactionManager;
+import toby.user.service.DummyMailSender;
+import toby.user.service.TxProxyFactoryBean;
+import toby.user.service.UserService;
+import toby.user.service.UserServiceImpl;
 
 import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.Properties;
 
- // 애플리케이션 컨텍스트 또는 빈 팩토리가 사용할 설정 정보라는 표시
+// 애플리케이션 컨텍스트 또는 빈 팩토리가 사용할 설정 정보라는 표시
+// XML을 파싱하지 않으므로 applicationContext.xml보다 컨텍스트가 빨리 뜬다.
+// 기동 비용의 대부분인 커넥션 풀 채우기와 evictor 스레드 시작은 init-method 없이 처음 커넥션을 빌릴 때 한다.
+// 나머지 빈은 만드는 비용이 작아 지연 생성하지 않는다. applicationContext.xml도 같은 방식으로 등록한다.
+@Configuration
 public class DaoFactory {
-
-
+    // cachingUserDao도 UserDao 타입이므로, 이름 없이 UserDao를 주입받는 곳에는 이 빈이 들어가도록 한다.
+    @Bean
+    @Primary
     public UserDaoJdbc userDao() {
         UserDaoJdbc userDao = new UserDaoJdbc();
         userDao.setDataSource(dataSource());
+        userDao.setReadDataSource(routingDataSource().getReadDataSource());
         return userDao;
     }
 
+    // UserDao 대신 주입하면 UserServiceImpl을 고치지 않고 get() 결과를 캐시할 수 있다.
+    @Bean
+    public UserDao cachingUserDao() {
+        CachingUserDao cachingUserDao = new CachingUserDao(userDao(), 10000, CachingUserDao.EvictionPolicy.LRU);
+        cachingUserDao.setTtlMillis(60000);
+        return cachingUserDao;
+    }
+
+    @Bean
+    public ConnectionMaker connectionMaker(){
+        return new PooledConnectionMaker(primaryDataSource());
+    }
 
+    // 모든 DAO와 트랜잭션 매니저가 함께 사용하는 DataSource.
+    // 읽기 전용 트랜잭션은 replica로, 그 밖의 트랜잭션은 primary로 보낸다. 트랜잭션이 커넥션을 얻는 시점에는
+    // 읽기 전용 여부가 아직 정해지지 않았으므로 첫 문장을 실행할 때 커넥션을 얻도록 감싼다.
+    @Bean
+    @Primary
     public DataSource dataSource(){
-        return new SimpleDriverDataSource();
+        return new LazyConnectionDataSourceProxy(routingDataSource());
+    }
+
+    @Bean
+    public ReadWriteRoutingDataSource routingDataSource(){
+        return new ReadWriteRoutingDataSource(primaryDataSource(), Collections.<DataSource>singletonList(replicaDataSource()));
+    }
+
+    @Bean(destroyMethod = "close")
+    public PooledDataSource primaryDataSource(){
+        return pooledDataSource("jdbc:mysql://localhost:3306/springbook?useCursorFetch=true");
+    }
+
+    // 운영에서는 replica 주소로 바꾼다. 기본값은 primary와 같은 DB라서 복제 지연 없이 같은 값을 읽는다.
+    @Bean(destroyMethod = "close")
+    public PooledDataSource replicaDataSource(){
+        return pooledDataSource("jdbc:mysql://localhost:3306/springbook?useCursorFetch=true");
+    }
+
+    private PooledDataSource pooledDataSource(String url){
+        SimpleDriverDataSource targetDataSource = new SimpleDriverDataSource();
+        targetDataSource.setDriverClass(com.mysql.cj.jdbc.Driver.class);
+        targetDataSource.setUrl(url);
+        targetDataSource.setUsername("");
+        targetDataSource.setPassword("");
+
+        PooledDataSource dataSource = new PooledDataSource(targetDataSource);
+        dataSource.setMinSize(2);
+        dataSource.setMaxSize(10);
+        return dataSource;
+    }
+
+    @Bean
+    public PlatformTransactionManager transactionManager(){
+        return new DataSourceTransactionManager(dataSource());
+    }
+
+    @Bean
+    public MailSender mailSender(){
+        return new DummyMailSender();
+    }
+
+    @Bean
+    public UserServiceImpl userServiceImpl(){
+        UserServiceImpl userServiceImpl = new UserServiceImpl();
+        userServiceImpl.setUserDao(userDao());
+        userServiceImpl.setMailSender(mailSender());
+        userServiceImpl.setTransactionManager(transactionManager());
+        userServiceImpl.setDataSource(dataSource());
+        return userServiceImpl;
+    }
+
+    // 페이지/구간/묶음 단위 업그레이드는 UserServiceImpl이 직접 트랜잭션을 나누므로 트랜잭션 없이 호출한다.
+    @Bean
+    public TxProxyFactoryBean userService(){
+        Properties transactionAttributes = new Properties();
+        transactionAttributes.setProperty("addAll", "PROPAGATION_REQUIRED");
+        transactionAttributes.setProperty("upgradeLevels", "PROPAGATION_REQUIRED");
+        transactionAttributes.setProperty("upgradeLevelsInDatabase", "PROPAGATION_REQUIRED");
+
+        TxProxyFactoryBean txProxyFactoryBean = new TxProxyFactoryBean();
+        txProxyFactoryBean.setTarget(userServiceImpl());
+        txProxyFactoryBean.setTransactionManager(transactionManager());
+        txProxyFactoryBean.setServiceInterface(UserService.class);
+        txProxyFactoryBean.setTransactionAttributes(transactionAttributes);
+        return txProxyFactoryBean;
     }
 }
@@ -0,0 +1,30 @@
+package toby.user.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class InstrumentedConnectionMaker implements ConnectionMaker{
+    private final ConnectionMaker connectionMaker;
+    private final JdbcMetrics metrics;
+
+    public InstrumentedConnectionMaker(ConnectionMaker connectionMaker, JdbcMetrics metrics) {
+        this.connectionMaker = connectionMaker;
+        this.metrics = metrics;
+    }
+
+    public Connection makeConnection() throws ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        Connection c;
+        try{
+            c = connectionMaker.makeConnection();
+        }catch (ClassNotFoundException | SQLException | RuntimeException e){
+            metrics.acquisitionFailed(System.nanoTime() - start);
+            throw e;
+        }
+        return InstrumentedDataSource.wrap(c, metrics, start);
+    }
+
+    public JdbcMetrics getMetrics() {
+        return metrics;
+    }
+}
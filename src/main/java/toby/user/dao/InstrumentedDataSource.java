@@ -0,0 +1,178 @@
+package toby.user.dao;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+// targetDataSource에서 얻는 커넥션의 대여 시간, 사용 시간, SQL별 실행 시간을 JdbcMetrics에 기록하는 DataSource.
+// PooledDataSource 바깥에 두면 대여 시간에 풀 대기 시간이 포함된다.
+public class InstrumentedDataSource implements DataSource {
+    private final DataSource targetDataSource;
+    private final JdbcMetrics metrics;
+
+    public InstrumentedDataSource(DataSource targetDataSource, JdbcMetrics metrics) {
+        this.targetDataSource = targetDataSource;
+        this.metrics = metrics;
+    }
+
+    public JdbcMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection c;
+        try{
+            c = targetDataSource.getConnection();
+        }catch (SQLException | RuntimeException e){
+            metrics.acquisitionFailed(System.nanoTime() - start);
+            throw e;
+        }
+        return wrap(c, metrics, start);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection c;
+        try{
+            c = targetDataSource.getConnection(username, password);
+        }catch (SQLException | RuntimeException e){
+            metrics.acquisitionFailed(System.nanoTime() - start);
+            throw e;
+        }
+        return wrap(c, metrics, start);
+    }
+
+    // requestedAt은 커넥션을 요청한 시점의 System.nanoTime() 값이다.
+    static Connection wrap(Connection c, JdbcMetrics metrics, long requestedAt) {
+        long acquiredAt = System.nanoTime();
+        metrics.connectionAcquired(acquiredAt - requestedAt);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(c, metrics, acquiredAt));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try{
+            return method.invoke(target, args);
+        }catch (InvocationTargetException e){
+            throw e.getTargetException();
+        }
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final JdbcMetrics metrics;
+        private final long acquiredAt;
+        private boolean released;
+
+        ConnectionHandler(Connection target, JdbcMetrics metrics, long acquiredAt) {
+            this.target = target;
+            this.metrics = metrics;
+            this.acquiredAt = acquiredAt;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if(name.equals("close")){
+                if(!released){
+                    released = true;
+                    metrics.connectionReleased(System.nanoTime() - acquiredAt);
+                }
+                return InstrumentedDataSource.invoke(target, method, args);
+            }else if(name.equals("equals")){
+                return proxy == args[0];
+            }else if(name.equals("hashCode")){
+                return System.identityHashCode(proxy);
+            }
+
+            Object result = InstrumentedDataSource.invoke(target, method, args);
+            if(result instanceof PreparedStatement && (name.equals("prepareStatement") || name.equals("prepareCall"))){
+                Class<?> type = (result instanceof CallableStatement) ? CallableStatement.class : PreparedStatement.class;
+                return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                        new StatementHandler((Statement) result, (String) args[0], metrics));
+            }else if(result instanceof Statement && name.equals("createStatement")){
+                return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{Statement.class},
+                        new StatementHandler((Statement) result, null, metrics));
+            }
+            return result;
+        }
+    }
+
+    // PreparedStatement는 준비할 때의 SQL로, 일반 Statement는 execute 계열 메소드에 넘긴 SQL로 기록한다.
+    private static class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String sql;
+        private final JdbcMetrics metrics;
+
+        StatementHandler(Statement target, String sql, JdbcMetrics metrics) {
+            this.target = target;
+            this.sql = sql;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if(!method.getName().startsWith("execute")){
+                return InstrumentedDataSource.invoke(target, method, args);
+            }
+
+            String executed = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : sql;
+            long start = System.nanoTime();
+            try{
+                return InstrumentedDataSource.invoke(target, method, args);
+            }finally{
+                metrics.statementExecuted(executed != null ? executed : "(batch)", System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return targetDataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        targetDataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        targetDataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return targetDataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return targetDataSource.getParentLogger();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if(iface.isInstance(this)) return (T) this;
+        return targetDataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || targetDataSource.isWrapperFor(iface);
+    }
+}
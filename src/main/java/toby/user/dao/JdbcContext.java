@@ -1,31 +1,105 @@
 package toby.user.dao;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class JdbcContext {
+    private static final Log log = LogFactory.getLog(JdbcContext.class);
+    private static final int MAX_TIMING_KEYS = 200;
+    private static final String OTHER_TIMINGS = "(other)";
+
     private DataSource dataSource;
 
+    // 0이면 느린 문장을 기록하지 않는다.
+    private long slowStatementThresholdNanos = 0;
+    // n이면 n번에 한 번꼴로 실행 시간을 집계한다. 0이면 집계하지 않는다.
+    private int timingSampleRate = 0;
+    private final ConcurrentHashMap<String, LatencyHistogram> strategyTimings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> sqlTimings = new ConcurrentHashMap<>();
+
+    // 0이면 PreparedStatement를 캐시하지 않는다. 커넥션 풀과 함께 쓸 때만 효과가 있다.
+    private int statementCacheSize = 0;
+    private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<>();
+    private final ReentrantLock statementCacheLock = new ReentrantLock();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
     }
 
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    public void setSlowStatementThresholdMillis(long slowStatementThresholdMillis) {
+        this.slowStatementThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowStatementThresholdMillis);
+    }
+
+    public void setTimingSampleRate(int timingSampleRate) {
+        this.timingSampleRate = timingSampleRate;
+    }
+
+    // 느린 문장을 놓치지 않도록 기준 시간이 설정돼 있으면 샘플링과 관계없이 매번 시간을 잰다.
+    // 둘 다 꺼져 있으면 시간을 재지도, 커넥션을 감싸지도 않는다.
+    // 커넥션을 얻은 뒤부터 재고, 문장이 실패해도 finally에서 기록한다.
     public void workWithStatementStrategy(StatementStrategy stmt) throws SQLException {
         Connection c = null;
         PreparedStatement ps = null;
+        Set<PreparedStatement> cached = null;
+
+        boolean sampled = timingSampleRate > 0 && ThreadLocalRandom.current().nextInt(timingSampleRate) == 0;
+        boolean timed = sampled || slowStatementThresholdNanos > 0;
+        boolean started = false;
+        boolean succeeded = false;
+        long start = 0;
+        String[] sql = timed ? new String[1] : null;
 
         try{
             c = dataSource.getConnection();
+            if(timed){
+                start = System.nanoTime();
+                started = true;
+            }
 
-            ps = stmt.makePreparedStatement(c);
+            if(statementCacheSize > 0){
+                cached = Collections.newSetFromMap(new IdentityHashMap<PreparedStatement, Boolean>());
+            }
+            if(cached != null || sql != null){
+                ps = stmt.makePreparedStatement(interceptingConnection(c, cached, sql));
+            }else{
+                ps = stmt.makePreparedStatement(c);
+            }
 
             ps.executeUpdate();
+            succeeded = true;
         }catch (SQLException e){
             throw e;
         }finally{
-            if(ps != null){ try{ ps.close();} catch (SQLException e){}}
+            if(started){
+                recordTiming(stmt, sql[0], ps, System.nanoTime() - start, sampled, succeeded);
+            }
+            if(ps != null && cached != null && cached.contains(ps)){
+                try{ ps.clearParameters();} catch (SQLException e){}
+            }else if(ps != null){ try{ ps.close();} catch (SQLException e){}}
             if(c != null) {try{ c.close();} catch (SQLException e){}}
         }
     }
@@ -39,4 +113,105 @@ public class JdbcContext {
                                                    }
         );
     }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    // 전략별 집계. 익명 전략은 JdbcContext$1처럼 바깥 클래스 이름으로 구분된다.
+    public Map<String, LatencyHistogram> getStrategyTimings() {
+        return new TreeMap<>(strategyTimings);
+    }
+
+    public Map<String, LatencyHistogram> getSqlTimings() {
+        return new TreeMap<>(sqlTimings);
+    }
+
+    private void recordTiming(StatementStrategy stmt, String sql, PreparedStatement ps, long nanos, boolean sampled, boolean succeeded) {
+        if(sampled){
+            timingFor(strategyTimings, stmt.getClass().getName()).record(nanos);
+            if(sql != null) timingFor(sqlTimings, sql).record(nanos);
+        }
+        if(slowStatementThresholdNanos > 0 && nanos >= slowStatementThresholdNanos && log.isWarnEnabled()){
+            log.warn((succeeded ? "느린 문장 " : "느리게 실패한 문장 ") + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms: strategy=" + stmt.getClass().getName()
+                    + ", sql=" + sql + ", 바인드 파라미터 " + parameterCount(ps) + "개");
+        }
+    }
+
+    private static LatencyHistogram timingFor(ConcurrentHashMap<String, LatencyHistogram> timings, String key) {
+        LatencyHistogram histogram = timings.get(key);
+        if(histogram == null){
+            if(timings.size() >= MAX_TIMING_KEYS) key = OTHER_TIMINGS;
+            histogram = timings.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        return histogram;
+    }
+
+    // 드라이버에 따라 메타데이터 조회가 DB 왕복일 수 있어 느린 문장을 기록할 때만 부른다.
+    private static int parameterCount(PreparedStatement ps) {
+        if(ps == null) return -1;
+        try{
+            return ps.getParameterMetaData().getParameterCount();
+        }catch (SQLException e){
+            return -1;
+        }
+    }
+
+    // 전략에는 prepareStatement(String)를 가로채는 커넥션을 넘긴다.
+    // cached가 있으면 캐시를 거치고 캐시에서 나온 문장은 cached에 기록해 닫지 않게 하며, sql이 있으면 마지막으로 준비한 SQL을 남긴다.
+    private Connection interceptingConnection(final Connection c, final Set<PreparedStatement> cached, final String[] sql) throws SQLException {
+        final StatementCache cache = (cached != null) ? statementCacheFor(c) : null;
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if(method.getName().equals("prepareStatement") && args.length == 1){
+                        String query = (String) args[0];
+                        if(sql != null) sql[0] = query;
+                        if(cache == null) return c.prepareStatement(query);
+
+                        PreparedStatement ps = cache.get(query);
+                        if(ps != null){
+                            statementCacheHits.increment();
+                        }else{
+                            statementCacheMisses.increment();
+                            ps = cache.prepare(c, query);
+                        }
+                        cached.add(ps);
+                        return ps;
+                    }
+                    try{
+                        return method.invoke(c, args);
+                    }catch (InvocationTargetException e){
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    // 풀에서 빌린 커넥션은 대여할 때마다 다른 객체이므로 그 밑의 물리 커넥션을 기준으로 캐시를 찾는다.
+    private StatementCache statementCacheFor(Connection c) throws SQLException {
+        Connection physical = c.isWrapperFor(Connection.class) ? c.unwrap(Connection.class) : c;
+        statementCacheLock.lock();
+        try{
+            StatementCache cache = statementCaches.get(physical);
+            if(cache == null){
+                removeClosedConnections();
+                cache = new StatementCache(statementCacheSize);
+                statementCaches.put(physical, cache);
+            }
+            return cache;
+        }finally{
+            statementCacheLock.unlock();
+        }
+    }
+
+    // 캐시된 문장이 커넥션을 참조하고 있으므로, 새 물리 커넥션이 보일 때 이미 닫힌 커넥션의 캐시를 정리한다.
+    private void removeClosedConnections() throws SQLException {
+        Iterator<Connection> it = statementCaches.keySet().iterator();
+        while(it.hasNext()){
+            if(it.next().isClosed()) it.remove();
+        }
+    }
 }
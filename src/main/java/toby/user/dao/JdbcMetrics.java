@@ -0,0 +1,133 @@
+package toby.user.dao;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// InstrumentedDataSource와 InstrumentedConnectionMaker가 기록하는 지표 모음.
+// 히스토그램은 나노초로 기록하고, SQL별 히스토그램은 maxStatements 종류까지만 따로 모은다.
+public class JdbcMetrics implements JdbcMetricsMXBean {
+    private static final String OTHER_STATEMENTS = "(other)";
+
+    private final LatencyHistogram acquisition = new LatencyHistogram();
+    private final LatencyHistogram hold = new LatencyHistogram();
+    private final ConcurrentHashMap<String, LatencyHistogram> statements = new ConcurrentHashMap<>();
+    private final LongAdder connectionsAcquired = new LongAdder();
+    private final LongAdder acquisitionFailures = new LongAdder();
+    private final LongAdder activeConnections = new LongAdder();
+    private int maxStatements = 500;
+
+    public void setMaxStatements(int maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("toby.user.dao:type=JdbcMetrics,name=" + name));
+    }
+
+    void connectionAcquired(long nanos) {
+        connectionsAcquired.increment();
+        activeConnections.increment();
+        acquisition.record(nanos);
+    }
+
+    void acquisitionFailed(long nanos) {
+        acquisitionFailures.increment();
+        acquisition.record(nanos);
+    }
+
+    void connectionReleased(long heldNanos) {
+        activeConnections.decrement();
+        hold.record(heldNanos);
+    }
+
+    void statementExecuted(String sql, long nanos) {
+        LatencyHistogram histogram = statements.get(sql);
+        if(histogram == null){
+            String key = (statements.size() < maxStatements) ? sql : OTHER_STATEMENTS;
+            histogram = statements.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    public LatencyHistogram getAcquisition() {
+        return acquisition;
+    }
+
+    public LatencyHistogram getHold() {
+        return hold;
+    }
+
+    public LatencyHistogram getStatement(String sql) {
+        return statements.get(sql);
+    }
+
+    public long getConnectionsAcquired() {
+        return connectionsAcquired.sum();
+    }
+
+    public long getAcquisitionFailures() {
+        return acquisitionFailures.sum();
+    }
+
+    public long getActiveConnections() {
+        return activeConnections.sum();
+    }
+
+    public long getAcquisitionP50Micros() {
+        return micros(acquisition.getPercentile(50));
+    }
+
+    public long getAcquisitionP99Micros() {
+        return micros(acquisition.getPercentile(99));
+    }
+
+    public long getAcquisitionMaxMicros() {
+        return micros(acquisition.getMax());
+    }
+
+    public long getHoldP50Micros() {
+        return micros(hold.getPercentile(50));
+    }
+
+    public long getHoldP99Micros() {
+        return micros(hold.getPercentile(99));
+    }
+
+    public long getHoldMaxMicros() {
+        return micros(hold.getMax());
+    }
+
+    public long getStatementCount() {
+        long total = 0;
+        for(LatencyHistogram histogram : statements.values()) total += histogram.getCount();
+        return total;
+    }
+
+    public Map<String, Long> getStatementP99Micros() {
+        Map<String, Long> p99 = new TreeMap<>();
+        for(Map.Entry<String, LatencyHistogram> entry : statements.entrySet()){
+            p99.put(entry.getKey(), micros(entry.getValue().getPercentile(99)));
+        }
+        return p99;
+    }
+
+    // 대여 중인 커넥션 수는 실제 상태이므로 초기화하지 않는다.
+    public void reset() {
+        acquisition.reset();
+        hold.reset();
+        statements.clear();
+        connectionsAcquired.reset();
+        acquisitionFailures.reset();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
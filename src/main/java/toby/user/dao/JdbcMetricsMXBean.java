@@ -0,0 +1,19 @@
+package toby.user.dao;
+
+import java.util.Map;
+
+// JMX로 노출하는 JDBC 지표. 시간 단위는 모두 마이크로초다.
+public interface JdbcMetricsMXBean {
+    long getConnectionsAcquired();
+    long getAcquisitionFailures();
+    long getActiveConnections();
+    long getAcquisitionP50Micros();
+    long getAcquisitionP99Micros();
+    long getAcquisitionMaxMicros();
+    long getHoldP50Micros();
+    long getHoldP99Micros();
+    long getHoldMaxMicros();
+    long getStatementCount();
+    Map<String, Long> getStatementP99Micros();
+    void reset();
+}
@@ -0,0 +1,18 @@
+package toby.user.dao;
+
+import toby.user.domain.OutboxMail;
+
+import java.util.Date;
+import java.util.List;
+
+public interface MailOutboxDao {
+    void add(OutboxMail mail);
+    List<OutboxMail> getUndelivered(int limit, int maxAttempts, Date now);
+    void claim(List<Long> ids, Date leaseUntil);
+    void markDelivered(List<Long> ids);
+    void reschedule(List<Long> ids, Date nextAttemptAt);
+    Integer getUndeliveredCount();
+    List<OutboxMail> getExhausted(int limit, int maxAttempts, Date now);
+    Integer getExhaustedCount(int maxAttempts, Date now);
+    int deleteExhausted(int maxAttempts, Date now);
+}
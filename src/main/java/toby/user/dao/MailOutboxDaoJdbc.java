@@ -0,0 +1,105 @@
+package toby.user.dao;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import toby.user.domain.OutboxMail;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class MailOutboxDaoJdbc implements MailOutboxDao {
+    private JdbcTemplate jdbcTemplate;
+
+    public void setDataSource(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    private RowMapper<OutboxMail> outboxMailMapper = new RowMapper<OutboxMail>() {
+        @Override
+        public OutboxMail mapRow(ResultSet rs, int rowNum) throws SQLException {
+            OutboxMail mail = new OutboxMail();
+            mail.setId(rs.getLong("id"));
+            mail.setRecipient(rs.getString("recipient"));
+            mail.setSender(rs.getString("sender"));
+            mail.setSubject(rs.getString("subject"));
+            mail.setText(rs.getString("text"));
+            mail.setAttempts(rs.getInt("attempts"));
+            return mail;
+        }
+    };
+
+    public void add(OutboxMail mail) {
+        this.jdbcTemplate.update("insert into mail_outbox(recipient, sender, subject, text) values (?, ?, ?, ?)",
+                mail.getRecipient(), mail.getSender(), mail.getSubject(), mail.getText());
+    }
+
+    // next_attempt_at이 지난 메일만 읽는다. 다른 릴레이가 잡고 있는 행은 건너뛰므로 릴레이를 여러 개 띄워도 같은 메일을 동시에 보내지 않는다.
+    public List<OutboxMail> getUndelivered(int limit, int maxAttempts, Date now) {
+        return this.jdbcTemplate.query(
+                "select id, recipient, sender, subject, text, attempts from mail_outbox " +
+                        "where delivered_at is null and next_attempt_at <= ? and attempts < ? " +
+                        "order by next_attempt_at, id limit ? for update skip locked",
+                this.outboxMailMapper, new Timestamp(now.getTime()), maxAttempts, limit);
+    }
+
+    // 발송을 시작하면서 시도 횟수를 올리고 leaseUntil까지 다른 릴레이가 읽지 못하게 한다.
+    // 발송 결과를 기록하지 못하고 릴레이가 죽으면 leaseUntil 뒤에 다시 보낸다.
+    public void claim(List<Long> ids, Date leaseUntil) {
+        this.jdbcTemplate.batchUpdate("update mail_outbox set attempts = attempts + 1, next_attempt_at = ? where id = ?",
+                toBatchArgs(ids, new Timestamp(leaseUntil.getTime())));
+    }
+
+    public void markDelivered(List<Long> ids) {
+        this.jdbcTemplate.batchUpdate("update mail_outbox set delivered_at = current_timestamp where id = ?", toBatchArgs(ids));
+    }
+
+    public void reschedule(List<Long> ids, Date nextAttemptAt) {
+        this.jdbcTemplate.batchUpdate("update mail_outbox set next_attempt_at = ? where id = ?",
+                toBatchArgs(ids, new Timestamp(nextAttemptAt.getTime())));
+    }
+
+    public Integer getUndeliveredCount() {
+        return this.jdbcTemplate.queryForObject("select count(*) from mail_outbox where delivered_at is null", Integer.class);
+    }
+
+    // maxAttempts번 시도하고도 보내지 못해 릴레이가 더 이상 읽지 않는 메일. 마지막 시도 중인 메일은 lease가 끝나야 포함된다.
+    public List<OutboxMail> getExhausted(int limit, int maxAttempts, Date now) {
+        return this.jdbcTemplate.query(
+                "select id, recipient, sender, subject, text, attempts from mail_outbox " +
+                        "where delivered_at is null and next_attempt_at <= ? and attempts >= ? order by id limit ?",
+                this.outboxMailMapper, new Timestamp(now.getTime()), maxAttempts, limit);
+    }
+
+    public Integer getExhaustedCount(int maxAttempts, Date now) {
+        return this.jdbcTemplate.queryForObject(
+                "select count(*) from mail_outbox where delivered_at is null and next_attempt_at <= ? and attempts >= ?",
+                Integer.class, new Timestamp(now.getTime()), maxAttempts);
+    }
+
+    public int deleteExhausted(int maxAttempts, Date now) {
+        return this.jdbcTemplate.update(
+                "delete from mail_outbox where delivered_at is null and next_attempt_at <= ? and attempts >= ?",
+                new Timestamp(now.getTime()), maxAttempts);
+    }
+
+    private List<Object[]> toBatchArgs(List<Long> ids) {
+        List<Object[]> args = new ArrayList<>(ids.size());
+        for(Long id : ids){
+            args.add(new Object[]{id});
+        }
+        return args;
+    }
+
+    private List<Object[]> toBatchArgs(List<Long> ids, Timestamp timestamp) {
+        List<Object[]> args = new ArrayList<>(ids.size());
+        for(Long id : ids){
+            args.add(new Object[]{timestamp, id});
+        }
+        return args;
+    }
+}
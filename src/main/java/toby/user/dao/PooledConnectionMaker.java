@@ -0,0 +1,16 @@
+package toby.user.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class PooledConnectionMaker implements ConnectionMaker{
+    private PooledDataSource dataSource;
+
+    public PooledConnectionMaker(PooledDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public Connection makeConnection() throws ClassNotFoundException, SQLException {
+        return dataSource.getConnection();
+    }
+}
@@ -0,0 +1,376 @@
+package toby.user.dao;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+// targetDataSource가 만든 물리 커넥션을 재사용하는 커넥션 풀.
+// 대여 수는 공정(fair) 세마포어로 maxSize를 넘지 않게 막고, 유휴 커넥션은 락 없는 deque에 보관한다.
+// 물리 커넥션은 만들기 전에 totalCount를 CAS로 올려 자리를 잡으므로, 대여와 minSize 채우기가 겹쳐도 maxSize를 넘지 않는다.
+// 돌려받은 커넥션의 close()는 물리 커넥션을 닫지 않고 풀에 반납한다.
+// 반납할 때는 대여 중에 바꾼 자동 커밋, 읽기 전용, 격리 수준, 카탈로그를 처음 값으로 되돌린다.
+public class PooledDataSource implements DataSource {
+    private final DataSource targetDataSource;
+
+    private int minSize = 2;
+    private int maxSize = 10;
+    private long maxWaitMillis = 30000;
+    private long idleTimeoutMillis = 600000;
+    private long evictionIntervalMillis = 60000;
+    private int validationTimeoutSeconds = 1;
+    private long validationIdleMillis = 500;
+
+    private final ConcurrentLinkedDeque<PooledEntry> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final ReentrantLock initLock = new ReentrantLock();
+    private volatile Semaphore permits;
+    private volatile boolean closed;
+    private ScheduledExecutorService evictor;
+
+    public PooledDataSource(DataSource targetDataSource) {
+        this.targetDataSource = targetDataSource;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    // 0이면 대여할 때 검증하지 않는다.
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    // 반납된 지 이 시간이 지나지 않은 커넥션은 검증 없이 빌려준다. 짧은 쿼리마다 DB 왕복이 한 번 더 생기지 않게 한다.
+    public void setValidationIdleMillis(long validationIdleMillis) {
+        this.validationIdleMillis = validationIdleMillis;
+    }
+
+    // 처음 대여할 때 자동으로 호출되지만, 기동 시점에 minSize만큼 미리 채우려면 직접 호출한다.
+    public void init() throws SQLException {
+        if(permits != null) return;
+        initLock.lock();
+        try{
+            if(permits != null) return;
+            fillToMinSize();
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "pooled-datasource-evictor");
+                t.setDaemon(true);
+                return t;
+            });
+            evictor.scheduleWithFixedDelay(this::evictIdle, evictionIntervalMillis, evictionIntervalMillis, TimeUnit.MILLISECONDS);
+            permits = new Semaphore(maxSize, true);
+        }finally{
+            initLock.unlock();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if(closed) throw new SQLException("PooledDataSource가 이미 닫혔습니다.");
+        init();
+
+        try{
+            if(!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)){
+                throw new SQLTransientConnectionException("커넥션을 " + maxWaitMillis + "ms 안에 얻지 못했습니다.");
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("커넥션을 기다리는 중 인터럽트되었습니다.", e);
+        }
+
+        try{
+            while(true){
+                PooledEntry entry = idle.pollFirst();
+                if(entry != null){
+                    if(isValid(entry)) return entry.borrow();
+                    discard(entry);
+                }else if(reserve()){
+                    return newEntry().borrow();
+                }else{
+                    // 허가를 쥐고 있으므로 maxSize개 중 적어도 하나는 대여 중이 아니다. 채우거나 반납하는 중인 커넥션이 곧 들어온다.
+                    Thread.yield();
+                }
+            }
+        }catch (SQLException | RuntimeException e){
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("PooledDataSource는 설정된 계정으로만 커넥션을 만듭니다.");
+    }
+
+    // 유휴 커넥션을 모두 닫는다. 대여 중인 커넥션은 반납될 때 닫힌다.
+    public void close() {
+        closed = true;
+        if(evictor != null) evictor.shutdownNow();
+        PooledEntry entry;
+        while((entry = idle.pollFirst()) != null){
+            discard(entry);
+        }
+    }
+
+    public int getTotalCount() {
+        return totalCount.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return totalCount.get() - idle.size();
+    }
+
+    private boolean isValid(PooledEntry entry) {
+        if(validationTimeoutSeconds <= 0) return true;
+        if(System.currentTimeMillis() - entry.lastReturned < validationIdleMillis) return true;
+        try{
+            return entry.physical.isValid(validationTimeoutSeconds);
+        }catch (SQLException e){
+            return false;
+        }
+    }
+
+    // maxSize보다 적을 때만 totalCount를 하나 올리고 true를 돌려준다.
+    private boolean reserve() {
+        while(true){
+            int count = totalCount.get();
+            if(count >= maxSize) return false;
+            if(totalCount.compareAndSet(count, count + 1)) return true;
+        }
+    }
+
+    // reserve()로 잡은 자리에 물리 커넥션을 만든다. 실패하면 자리를 돌려준다.
+    private PooledEntry newEntry() throws SQLException {
+        Connection physical;
+        try{
+            physical = targetDataSource.getConnection();
+        }catch (SQLException | RuntimeException e){
+            totalCount.decrementAndGet();
+            throw e;
+        }
+        try{
+            return new PooledEntry(physical, physical.getTransactionIsolation(), physical.getCatalog());
+        }catch (SQLException e){
+            totalCount.decrementAndGet();
+            try{ physical.close(); } catch (SQLException closeFailure){}
+            throw e;
+        }
+    }
+
+    private void discard(PooledEntry entry) {
+        totalCount.decrementAndGet();
+        try{ entry.physical.close(); } catch (SQLException e){}
+    }
+
+    private void fillToMinSize() {
+        try{
+            while(!closed && totalCount.get() < minSize && reserve()){
+                idle.offerLast(newEntry());
+            }
+        }catch (SQLException e){
+            // DB가 아직 준비되지 않았으면 다음 주기에 다시 채운다.
+        }
+    }
+
+    // idleTimeout이 지난 유휴 커넥션을 minSize까지 줄인다. 대여와 경쟁해서 꺼내 간 커넥션은 건드리지 않는다.
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleTimeoutMillis;
+        for(PooledEntry entry : idle){
+            if(totalCount.get() <= minSize) break;
+            if(entry.lastReturned < deadline && idle.removeFirstOccurrence(entry)){
+                discard(entry);
+            }
+        }
+        fillToMinSize();
+    }
+
+    // 유휴 목록에 먼저 넣은 뒤 허가를 돌려줘야, 그 허가를 얻은 대여자가 새로 만들 자리를 찾지 못하고 기다리는 일이 없다.
+    private void release(PooledEntry entry) {
+        if(!closed && reset(entry)){
+            entry.lastReturned = System.currentTimeMillis();
+            idle.offerFirst(entry);
+        }else{
+            discard(entry);
+        }
+        permits.release();
+    }
+
+    private boolean reset(PooledEntry entry) {
+        try{
+            if(entry.physical.isClosed()) return false;
+            if(!entry.physical.getAutoCommit()){
+                entry.physical.rollback();
+                entry.physical.setAutoCommit(true);
+            }
+            if(entry.physical.isReadOnly()) entry.physical.setReadOnly(false);
+            if(entry.isolationChanged){
+                entry.physical.setTransactionIsolation(entry.isolation);
+                entry.isolationChanged = false;
+            }
+            if(entry.catalogChanged){
+                entry.physical.setCatalog(entry.catalog);
+                entry.catalogChanged = false;
+            }
+            return true;
+        }catch (SQLException e){
+            return false;
+        }
+    }
+
+    // 격리 수준과 카탈로그는 드라이버에 따라 읽을 때마다 DB를 다녀오므로, 처음 값을 기억해 두고 바꾼 경우에만 되돌린다.
+    private class PooledEntry {
+        final Connection physical;
+        final int isolation;
+        final String catalog;
+        boolean isolationChanged;
+        boolean catalogChanged;
+        volatile long lastReturned = System.currentTimeMillis();
+
+        PooledEntry(Connection physical, int isolation, String catalog) {
+            this.physical = physical;
+            this.isolation = isolation;
+            this.catalog = catalog;
+        }
+
+        Connection borrow() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new PooledConnectionHandler(this));
+        }
+    }
+
+    // 대여할 때마다 새로 만들어서, 반납한 뒤 같은 핸들로 다시 쓰거나 두 번 반납하는 것을 막는다.
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final PooledEntry entry;
+        private boolean returned;
+
+        PooledConnectionHandler(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if(name.equals("close")){
+                if(!returned){
+                    returned = true;
+                    release(entry);
+                }
+                return null;
+            }else if(name.equals("isClosed")){
+                return returned || entry.physical.isClosed();
+            }else if(name.equals("equals")){
+                return proxy == args[0];
+            }else if(name.equals("hashCode")){
+                return System.identityHashCode(proxy);
+            }else if(returned){
+                throw new SQLException("이미 풀에 반납된 커넥션입니다.");
+            }else if(name.equals("setTransactionIsolation")){
+                entry.isolationChanged = true;
+            }else if(name.equals("setCatalog")){
+                entry.catalogChanged = true;
+            }
+
+            Object result;
+            try{
+                result = method.invoke(entry.physical, args);
+            }catch (InvocationTargetException e){
+                throw e.getTargetException();
+            }
+            if(result instanceof Statement) return wrapStatement((Statement) result, (Connection) proxy);
+            return result;
+        }
+    }
+
+    // Statement.getConnection()이 물리 커넥션 대신 대여한 커넥션을 돌려주게 한다. 물리 커넥션을 닫으면 풀이 그 커넥션을 잃는다.
+    private static Statement wrapStatement(final Statement statement, final Connection connection) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if(name.equals("getConnection")) return connection;
+                    if(name.equals("equals")) return proxy == args[0];
+                    if(name.equals("hashCode")) return System.identityHashCode(proxy);
+                    try{
+                        return method.invoke(statement, args);
+                    }catch (InvocationTargetException e){
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return targetDataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        targetDataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        targetDataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return targetDataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return targetDataSource.getParentLogger();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if(iface.isInstance(this)) return (T) this;
+        return targetDataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || targetDataSource.isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,192 @@
+package toby.user.dao;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// 읽기 전용 트랜잭션의 커넥션은 replica 중 하나에서, 그 밖의 커넥션은 primary에서 얻는 DataSource.
+// 쓰기 트랜잭션 안의 읽기는 primary로 가므로 같은 트랜잭션에서 쓴 값을 그대로 읽는다.
+// DataSourceTransactionManager는 읽기 전용 표시를 하기 전에 커넥션을 얻으므로,
+// 이 DataSource를 LazyConnectionDataSourceProxy로 감싸서 첫 문장을 실행할 때 커넥션을 고르게 해야 한다.
+// 트랜잭션 밖의 커넥션은 쓰기에 쓰일지 알 수 없으므로 primary로 보낸다. 트랜잭션 밖의 읽기를 replica로 보내려면
+// getReadDataSource()를 UserDaoJdbc.setReadDataSource()에 넣는다.
+public class ReadWriteRoutingDataSource implements DataSource {
+    public enum Balancing {
+        ROUND_ROBIN,     // 순서대로 돌아가며 고른다
+        LEAST_IN_FLIGHT  // 지금 빌려 간 커넥션이 가장 적은 replica를 고른다
+    }
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final AtomicInteger[] inFlight;
+    private final AtomicLong next = new AtomicLong();
+    private final DataSource readDataSource = new ReplicaDataSource();
+    private Balancing balancing = Balancing.ROUND_ROBIN;
+    private boolean fallbackToPrimary = true;
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas);
+        this.inFlight = new AtomicInteger[replicas.size()];
+        for(int i = 0; i < inFlight.length; i++) inFlight[i] = new AtomicInteger();
+    }
+
+    public void setBalancing(Balancing balancing) {
+        this.balancing = balancing;
+    }
+
+    // replica에서 커넥션을 얻지 못하면 primary에서 얻는다.
+    public void setFallbackToPrimary(boolean fallbackToPrimary) {
+        this.fallbackToPrimary = fallbackToPrimary;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if(!TransactionSynchronizationManager.isCurrentTransactionReadOnly()){
+            return primary.getConnection();
+        }
+        return replicaConnection();
+    }
+
+    // 항상 replica에서 커넥션을 얻는 DataSource. 분산 방식과 primary로의 대체는 이 DataSource의 설정을 따른다.
+    public DataSource getReadDataSource() {
+        return readDataSource;
+    }
+
+    private Connection replicaConnection() throws SQLException {
+        if(replicas.isEmpty()) return primary.getConnection();
+
+        int replica = chooseReplica();
+        Connection c;
+        try{
+            c = replicas.get(replica).getConnection();
+        }catch (SQLException e){
+            if(!fallbackToPrimary) throw e;
+            return primary.getConnection();
+        }
+        return track(c, replica);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("ReadWriteRoutingDataSource는 설정된 계정으로만 커넥션을 만듭니다.");
+    }
+
+    public int getInFlight(int replica) {
+        return inFlight[replica].get();
+    }
+
+    // 여러 replica의 빌려 간 수가 같으면 돌아가며 고르도록 시작 위치를 매번 옮긴다.
+    private int chooseReplica() {
+        int size = replicas.size();
+        int start = (int) (next.getAndIncrement() % size);
+        if(balancing == Balancing.ROUND_ROBIN) return start;
+
+        int best = start;
+        for(int i = 1; i < size; i++){
+            int candidate = (start + i) % size;
+            if(inFlight[candidate].get() < inFlight[best].get()) best = candidate;
+        }
+        return best;
+    }
+
+    private Connection track(Connection c, int replica) {
+        inFlight[replica].incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ReplicaConnectionHandler(c, replica));
+    }
+
+    // 커넥션을 닫을 때 해당 replica의 빌려 간 수를 한 번만 줄인다.
+    private class ReplicaConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final int replica;
+        private boolean closed;
+
+        ReplicaConnectionHandler(Connection target, int replica) {
+            this.target = target;
+            this.replica = replica;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if(name.equals("close") && !closed){
+                closed = true;
+                inFlight[replica].decrementAndGet();
+            }else if(name.equals("equals")){
+                return proxy == args[0];
+            }else if(name.equals("hashCode")){
+                return System.identityHashCode(proxy);
+            }
+
+            try{
+                return method.invoke(target, args);
+            }catch (InvocationTargetException e){
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    private class ReplicaDataSource extends AbstractDataSource {
+        @Override
+        public Connection getConnection() throws SQLException {
+            return replicaConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return ReadWriteRoutingDataSource.this.getConnection(username, password);
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primary.getParentLogger();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if(iface.isInstance(this)) return (T) this;
+        return primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+}
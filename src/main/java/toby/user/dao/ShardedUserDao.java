@@ -0,0 +1,354 @@
+package toby.user.dao;
+
+import toby.user.domain.Level;
+import toby.user.domain.User;
+import toby.user.domain.UserActivity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+// id의 해시로 N개의 샤드(UserDao) 중 하나를 골라 저장하는 UserDao.
+// 한 사용자에 대한 작업은 해당 샤드로만 가고, 전체에 대한 작업은 모든 샤드에 동시에 보낸 뒤 결과를 합친다.
+// forEach()와 getAllAfter()는 샤드마다 pageSize 건씩 keyset 페이지로 읽으면서 k-way 병합하므로,
+// 한 번에 메모리에 올라가는 샤드 데이터는 샤드당 한 페이지뿐이다. getAll()과 getAllBetween()도 같은 병합으로
+// 목록을 채우지만 결과 전체는 메모리에 올라가므로, 전체를 훑을 때는 forEach()를 쓴다.
+// 병합 순서는 idOrder를 따르며, 샤드 DB의 "order by id" 정렬(컬레이션)과 같아야 한다.
+// 여러 샤드에 걸친 쓰기는 샤드마다 따로 반영되며, 호출한 쪽의 트랜잭션에 묶이지 않는다.
+// 샤드 수를 바꾸면 대부분의 id가 다른 샤드로 가므로 데이터를 옮겨야 한다.
+public class ShardedUserDao implements UserDao {
+    private final List<UserDao> shards;
+    // 기본 실행기. 샤드 호출은 JDBC에서 블로킹되므로 공용 ForkJoinPool 대신 샤드 수만큼의 전용 스레드를 쓴다.
+    private final ExecutorService shardExecutor;
+    private Executor executor;
+    private Comparator<String> idOrder = Comparator.naturalOrder();
+    private Comparator<User> byId = Comparator.comparing(User::getId, idOrder);
+    private int pageSize = 1000;
+
+    public ShardedUserDao(List<UserDao> shards) {
+        this.shards = new ArrayList<>(shards);
+        this.shardExecutor = Executors.newFixedThreadPool(this.shards.size(), new ShardThreadFactory());
+        this.executor = shardExecutor;
+    }
+
+    // 모든 샤드에 보내는 작업을 실행할 실행기. 샤드 수만큼 동시에 실행할 수 있어야 한다.
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    // 기본값인 String.compareTo()는 UTF-16 코드 단위 순서이므로 MySQL의 utf8mb4_bin과 같고,
+    // 대소문자를 구분하지 않는 *_ci 컬레이션과는 다르다. id 컬럼을 _bin으로 두거나 같은 순서의 Comparator를 넣는다.
+    public void setIdOrder(Comparator<String> idOrder) {
+        this.idOrder = idOrder;
+        this.byId = Comparator.comparing(User::getId, idOrder);
+    }
+
+    // 기본 실행기의 스레드를 멈춘다. setExecutor()로 넣은 실행기는 건드리지 않는다.
+    public void close() {
+        shardExecutor.shutdown();
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    // String.hashCode()는 JVM과 관계없이 같은 값이므로 서버마다 같은 샤드를 고른다.
+    public int shardOf(String id) {
+        return Math.floorMod(id.hashCode(), shards.size());
+    }
+
+    public void add(User user) {
+        shardFor(user.getId()).add(user);
+    }
+
+    public void addAll(Collection<User> users) {
+        final List<List<User>> byShard = groupByShard(users, User::getId);
+        scatter(i -> {
+            List<User> part = byShard.get(i);
+            if(!part.isEmpty()) shards.get(i).addAll(part);
+            return null;
+        });
+    }
+
+    public User get(String id) {
+        return shardFor(id).get(id);
+    }
+
+    public List<User> getByIds(Collection<String> ids) {
+        final List<List<String>> byShard = groupByShard(ids, id -> id);
+        List<User> users = new ArrayList<>();
+        for(List<User> part : scatter(i -> {
+            List<String> partIds = byShard.get(i);
+            return partIds.isEmpty() ? new ArrayList<User>() : shards.get(i).getByIds(partIds);
+        })){
+            users.addAll(part);
+        }
+        users.sort(byId);
+        return users;
+    }
+
+    public List<User> getAll() {
+        return getAllBetween(null, null);
+    }
+
+    public void forEach(Consumer<? super User> action) {
+        Iterator<User> merged = merge(null, null, pageSize);
+        while(merged.hasNext()){
+            action.accept(merged.next());
+        }
+    }
+
+    public List<User> getAllAfter(String id, int limit) {
+        List<User> users = new ArrayList<>(Math.min(limit, pageSize));
+        Iterator<User> merged = merge(id, null, Math.min(limit, pageSize));
+        while(users.size() < limit && merged.hasNext()){
+            users.add(merged.next());
+        }
+        return users;
+    }
+
+    // forEach()와 같은 병합 결과를 목록에 담는다. 샤드별 전체 목록을 따로 만들거나 다시 정렬하지 않는다.
+    public List<User> getAllBetween(String fromId, String toId) {
+        List<User> users = new ArrayList<>();
+        Iterator<User> merged = merge(fromId, toId, pageSize);
+        while(merged.hasNext()){
+            users.add(merged.next());
+        }
+        return users;
+    }
+
+    // 샤드마다 partitionSize / 샤드 수 간격의 경계를 구해 합친 뒤 일정한 간격으로 골라낸다.
+    // id가 해시로 고르게 퍼지므로 구간 크기는 partitionSize에 가깝지만 정확히 같지는 않다.
+    // 샤드 수보다 작은 partitionSize에서는 모든 id가 후보가 되므로 정확하다.
+    public List<String> getIdBoundaries(int partitionSize) {
+        final int step = Math.max(1, partitionSize / shards.size());
+        List<String> candidates = new ArrayList<>();
+        for(List<String> part : scatter(i -> shards.get(i).getIdBoundaries(step))){
+            candidates.addAll(part);
+        }
+        candidates.sort(idOrder);
+
+        int stride = Math.max(1, partitionSize / step);
+        List<String> boundaries = new ArrayList<>(candidates.size() / stride + 1);
+        for(int i = stride - 1; i < candidates.size(); i += stride){
+            boundaries.add(candidates.get(i));
+        }
+        return boundaries;
+    }
+
+    public void deleteAll() {
+        scatter(i -> {
+            shards.get(i).deleteAll();
+            return null;
+        });
+    }
+
+    public Integer getCount() {
+        int count = 0;
+        for(Integer shardCount : scatter(i -> shards.get(i).getCount())){
+            count += shardCount;
+        }
+        return count;
+    }
+
+    public EnumMap<Level, Long> getCountsByLevel() {
+        EnumMap<Level, Long> counts = new EnumMap<>(Level.class);
+        for(Level level : Level.values()) counts.put(level, 0L);
+        for(EnumMap<Level, Long> shardCounts : scatter(i -> shards.get(i).getCountsByLevel())){
+            for(Map.Entry<Level, Long> entry : shardCounts.entrySet()){
+                counts.merge(entry.getKey(), entry.getValue(), Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    public List<User> getUpgradeCandidates(final Level level, final int minLogin, final int minRecommend, final int limit) {
+        List<User> candidates = new ArrayList<>();
+        for(List<User> part : scatter(i -> shards.get(i).getUpgradeCandidates(level, minLogin, minRecommend, limit))){
+            candidates.addAll(part);
+        }
+        candidates.sort(byId);
+        return candidates.size() > limit ? new ArrayList<>(candidates.subList(0, limit)) : candidates;
+    }
+
+    public void update(User user) {
+        shardFor(user.getId()).update(user);
+    }
+
+    public void updateAll(List<User> users) {
+        final List<List<User>> byShard = groupByShard(users, User::getId);
+        scatter(i -> {
+            List<User> part = byShard.get(i);
+            if(!part.isEmpty()) shards.get(i).updateAll(part);
+            return null;
+        });
+    }
+
+    public void updateLevels(List<User> users) {
+        final List<List<User>> byShard = groupByShard(users, User::getId);
+        scatter(i -> {
+            List<User> part = byShard.get(i);
+            if(!part.isEmpty()) shards.get(i).updateLevels(part);
+            return null;
+        });
+    }
+
+    public void incrementCounts(List<UserActivity> activities) {
+        final List<List<UserActivity>> byShard = groupByShard(activities, UserActivity::getId);
+        scatter(i -> {
+            List<UserActivity> part = byShard.get(i);
+            if(!part.isEmpty()) shards.get(i).incrementCounts(part);
+            return null;
+        });
+    }
+
+    // 샤드 스레드에는 호출한 쪽의 트랜잭션이 없다. 샤드마다 잠금과 UPDATE가 한 트랜잭션이어야 하므로
+    // UserDaoJdbc.upgradeLevels()가 트랜잭션이 없으면 직접 여는 것에 기댄다. 샤드 사이는 원자적이지 않다.
+    public List<User> upgradeLevels(final Level level, final int minLogin, final int minRecommend) {
+        List<User> upgraded = new ArrayList<>();
+        for(List<User> part : scatter(i -> shards.get(i).upgradeLevels(level, minLogin, minRecommend))){
+            upgraded.addAll(part);
+        }
+        upgraded.sort(byId);
+        return upgraded;
+    }
+
+    private UserDao shardFor(String id) {
+        return shards.get(shardOf(id));
+    }
+
+    private <T> List<List<T>> groupByShard(Collection<T> items, Function<T, String> idOf) {
+        List<List<T>> byShard = new ArrayList<>(shards.size());
+        for(int i = 0; i < shards.size(); i++) byShard.add(new ArrayList<T>());
+        for(T item : items){
+            byShard.get(shardOf(idOf.apply(item))).add(item);
+        }
+        return byShard;
+    }
+
+    // 샤드 번호마다 call을 동시에 실행하고 샤드 순서대로 결과를 돌려준다.
+    // 모든 샤드가 끝날 때까지 기다린 뒤 첫 번째 예외를 다시 던진다.
+    private <T> List<T> scatter(final IntFunction<T> call) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for(int i = 0; i < shards.size(); i++){
+            final int shard = i;
+            futures.add(CompletableFuture.supplyAsync(() -> call.apply(shard), executor));
+        }
+
+        List<T> results = new ArrayList<>(shards.size());
+        RuntimeException failure = null;
+        for(CompletableFuture<T> future : futures){
+            try{
+                results.add(future.join());
+            }catch (CompletionException e){
+                if(failure == null){
+                    failure = (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+                }
+            }
+        }
+        if(failure != null) throw failure;
+        return results;
+    }
+
+    // fromId < id <= toId 범위를 id 순서로 돌려준다. 첫 페이지는 모든 샤드에서 동시에 읽는다.
+    private Iterator<User> merge(String fromId, String toId, int pageSize) {
+        List<ShardCursor> cursors = new ArrayList<>(shards.size());
+        for(UserDao shard : shards) cursors.add(new ShardCursor(shard, fromId, toId, pageSize, idOrder));
+        scatter(i -> {
+            cursors.get(i).fetch();
+            return null;
+        });
+        return new MergeIterator(cursors, byId);
+    }
+
+    // 스레드 덤프에서 구분되도록 이름을 붙이고, JVM 종료를 막지 않게 데몬으로 만든다.
+    private static class ShardThreadFactory implements ThreadFactory {
+        private final AtomicInteger sequence = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "user-shard-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static class MergeIterator implements Iterator<User> {
+        private final PriorityQueue<ShardCursor> heads;
+
+        MergeIterator(List<ShardCursor> cursors, Comparator<User> byId) {
+            this.heads = new PriorityQueue<>(Math.max(1, cursors.size()), (a, b) -> byId.compare(a.head(), b.head()));
+            for(ShardCursor cursor : cursors){
+                if(cursor.head() != null) heads.add(cursor);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public User next() {
+            ShardCursor cursor = heads.poll();
+            if(cursor == null) throw new NoSuchElementException();
+            User user = cursor.head();
+            cursor.advance();
+            if(cursor.head() != null) heads.add(cursor);
+            return user;
+        }
+    }
+
+    // 한 샤드를 id 순서로 한 페이지씩 읽는다.
+    private static class ShardCursor {
+        private final UserDao shard;
+        private final String toId;
+        private final int pageSize;
+        private final Comparator<String> idOrder;
+        private String lastId;
+        private List<User> page = new ArrayList<>();
+        private int position;
+        private boolean lastPage;
+
+        ShardCursor(UserDao shard, String fromId, String toId, int pageSize, Comparator<String> idOrder) {
+            this.shard = shard;
+            this.lastId = fromId;
+            this.toId = toId;
+            this.pageSize = pageSize;
+            this.idOrder = idOrder;
+        }
+
+        void fetch() {
+            page = shard.getAllAfter(lastId, pageSize);
+            position = 0;
+            lastPage = page.size() < pageSize;
+            if(!page.isEmpty()) lastId = page.get(page.size() - 1).getId();
+        }
+
+        User head() {
+            if(position >= page.size()) return null;
+            User user = page.get(position);
+            return (toId != null && idOrder.compare(user.getId(), toId) > 0) ? null : user;
+        }
+
+        void advance() {
+            position++;
+            if(position >= page.size() && !lastPage) fetch();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package toby.user.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 물리 커넥션 하나에 묶인 SQL -> PreparedStatement LRU 캐시.
+// 커넥션 풀이 한 커넥션을 동시에 한 스레드에게만 빌려주므로 따로 동기화하지 않는다.
+public class StatementCache {
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    public StatementCache(final int maxSize) {
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if(size() <= maxSize) return false;
+                try{ eldest.getValue().close(); } catch (SQLException e){}
+                return true;
+            }
+        };
+    }
+
+    // 캐시에 없거나 이미 닫힌 문장이면 null을 돌려준다.
+    public PreparedStatement get(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if(ps != null && ps.isClosed()){
+            statements.remove(sql);
+            return null;
+        }
+        return ps;
+    }
+
+    public PreparedStatement prepare(Connection c, String sql) throws SQLException {
+        PreparedStatement ps = c.prepareStatement(sql);
+        statements.put(sql, ps);
+        return ps;
+    }
+
+    public int size() {
+        return statements.size();
+    }
+}
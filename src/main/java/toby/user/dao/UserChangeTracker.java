@@ -0,0 +1,43 @@
+package toby.user.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// login/recommend가 바뀌었을 수 있는 사용자 id를 모아 두는 곳.
+// 업그레이드 작업은 drain()으로 꺼낸 사용자만 다시 평가한다. 메모리에만 있으므로
+// 서버가 재시작하면 비어 있고, 그 사이의 변경은 전체 검사로 보완해야 한다.
+public class UserChangeTracker {
+    private final Set<String> dirtyIds = ConcurrentHashMap.newKeySet();
+
+    public void markDirty(String id) {
+        dirtyIds.add(id);
+    }
+
+    public void markDirty(Collection<String> ids) {
+        dirtyIds.addAll(ids);
+    }
+
+    // 최대 max개의 id를 꺼낸다. 꺼낸 id는 목록에서 지워진다.
+    public List<String> drain(int max) {
+        List<String> ids = new ArrayList<>(Math.min(max, dirtyIds.size()));
+        Iterator<String> it = dirtyIds.iterator();
+        while(ids.size() < max && it.hasNext()){
+            String id = it.next();
+            it.remove();
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    public void clear() {
+        dirtyIds.clear();
+    }
+
+    public int size() {
+        return dirtyIds.size();
+    }
+}
@@ -1,14 +1,32 @@
 package toby.user.dao;
 
+import toby.user.domain.Level;
 import toby.user.domain.User;
+import toby.user.domain.UserActivity;
 
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserDao {
     void add(User user);
+    void addAll(Collection<User> users);
     User get(String id);
+    List<User> getByIds(Collection<String> ids);
     List<User> getAll();
+    void forEach(Consumer<? super User> action);
+    List<User> getAllAfter(String id, int limit);
+    List<User> getAllBetween(String fromId, String toId);
+    List<String> getIdBoundaries(int partitionSize);
     void deleteAll();
     Integer getCount();
+    EnumMap<Level, Long> getCountsByLevel();
+    List<User> getUpgradeCandidates(Level level, int minLogin, int minRecommend, int limit);
     void update(User user1);
+    void updateAll(List<User> users);
+    // level만 바꾼다. 다른 컬럼은 그대로 두므로 그 사이에 incrementCounts()로 더해진 값이 남는다.
+    void updateLevels(List<User> users);
+    void incrementCounts(List<UserActivity> activities);
+    List<User> upgradeLevels(Level level, int minLogin, int minRecommend);
 }
@@ -1,63 +1,409 @@
 package toby.user.dao;
 
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import toby.user.domain.Level;
 import toby.user.domain.User;
+import toby.user.domain.UserActivity;
 
 import javax.sql.DataSource;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class UserDaoJdbc implements UserDao{
+    // addAll()이 여러 건을 넣는 방식
+    public enum InsertMode {
+        BATCH,      // 같은 INSERT 문장을 JDBC 배치로 묶어 보낸다
+        MULTI_ROW   // insert ... values (...),(...) 한 문장에 여러 행을 넣는다
+    }
+
     private JdbcTemplate jdbcTemplate;
+    private JdbcTemplate readJdbcTemplate;
+    // 호출한 쪽의 트랜잭션이 없을 때 upgradeLevels()가 직접 여는 트랜잭션용
+    private PlatformTransactionManager transactionManager;
+    private int batchSize = 100;
+    private InsertMode insertMode = InsertMode.BATCH;
+    private int insertChunkSize = 500;
+    private int fetchSize = 1000;
+
+    // getCount()가 매번 count(*)를 실행할지, 메모리에서 유지하는 값을 돌려줄지
+    public enum CountMode { EXACT, MAINTAINED }
+
+    private CountMode countMode = CountMode.EXACT;
+    private final AtomicLong count = new AtomicLong();
+    private volatile boolean countInitialized;
+    private ScheduledExecutorService countResyncScheduler;
 
     public void setDataSource(DataSource dataSource) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionManager = new DataSourceTransactionManager(dataSource);
     }
 
-    private RowMapper<User> userMapper = new RowMapper<User>() {
-        @Override
-        public User mapRow(ResultSet rs, int rowNum) throws SQLException {
-            User user = new User();
-            user.setId(rs.getString("id"));
-            user.setName(rs.getString("name"));
-            user.setPassword(rs.getString("password"));
-            user.setLevel(Level.valueOf(rs.getInt("level")));
-            user.setLogin(rs.getInt("login"));
-            user.setRecommend(rs.getInt("recommend"));
-            user.setEmail(rs.getString("email"));
-            return user;
-        }
-    };
+    // 트랜잭션 밖에서 실행하는 조회를 보낼 DataSource. ReadWriteRoutingDataSource.getReadDataSource()를 넣으면 replica에서 읽는다.
+    // 복제 지연만큼 방금 쓴 값이 보이지 않을 수 있으므로, 쓴 값을 바로 읽어야 하는 곳은 트랜잭션 안에서 읽는다.
+    public void setReadDataSource(DataSource readDataSource) {
+        this.readJdbcTemplate = new JdbcTemplate(readDataSource);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setInsertMode(InsertMode insertMode) {
+        this.insertMode = insertMode;
+    }
+
+    public void setInsertChunkSize(int insertChunkSize) {
+        this.insertChunkSize = insertChunkSize;
+    }
+
+    // forEach()가 드라이버에 한 번에 가져오도록 요청하는 행 수.
+    // MySQL Connector/J는 useCursorFetch=true일 때만 이 값으로 끊어 읽고, 아니면 Integer.MIN_VALUE를 줘야 한 행씩 스트리밍한다.
+    // 그래서 DaoFactory와 applicationContext.xml의 URL에 useCursorFetch=true를 넣어 둔다.
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public void setCountMode(CountMode countMode) {
+        this.countMode = countMode;
+    }
+
+    private static final String USER_COLUMNS = "id, name, password, level, login, recommend, email";
+    private static final int MAX_IN_LIST_SIZE = 500;
 
     public void add(final User user) {
         this.jdbcTemplate.update("insert into users(id, name, password, level, login, recommend, email) values (?, ?, ?, ?, ?, ?, ?)",
                 user.getId(), user.getName(), user.getPassword(), user.getLevel().intValue(), user.getLogin(), user.getRecommend(), user.getEmail());
+        if(countMode == CountMode.MAINTAINED) afterCommit(count::incrementAndGet);
+    }
+
+    // insertChunkSize 건마다 한 번의 배치 또는 한 번의 다중 행 INSERT로 보낸다.
+    public void addAll(Collection<User> users) {
+        if(insertMode == InsertMode.BATCH){
+            this.jdbcTemplate.batchUpdate("insert into users(id, name, password, level, login, recommend, email) values (?, ?, ?, ?, ?, ?, ?)",
+                    users, this.insertChunkSize,
+                    new ParameterizedPreparedStatementSetter<User>() {
+                        @Override
+                        public void setValues(PreparedStatement ps, User user) throws SQLException {
+                            ps.setString(1, user.getId());
+                            ps.setString(2, user.getName());
+                            ps.setString(3, user.getPassword());
+                            ps.setInt(4, user.getLevel().intValue());
+                            ps.setInt(5, user.getLogin());
+                            ps.setInt(6, user.getRecommend());
+                            ps.setString(7, user.getEmail());
+                        }
+                    });
+        }else{
+            List<User> chunk = new ArrayList<>(this.insertChunkSize);
+            for(User user : users){
+                chunk.add(user);
+                if(chunk.size() >= this.insertChunkSize){
+                    addRows(chunk);
+                    chunk.clear();
+                }
+            }
+            if(!chunk.isEmpty()) addRows(chunk);
+        }
+        if(countMode == CountMode.MAINTAINED){
+            final int added = users.size();
+            afterCommit(() -> count.addAndGet(added));
+        }
+    }
+
+    private void addRows(List<User> users) {
+        StringBuilder sql = new StringBuilder("insert into users(id, name, password, level, login, recommend, email) values ");
+        Object[] args = new Object[users.size() * 7];
+        int i = 0;
+        for(User user : users){
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?)");
+            args[i++] = user.getId();
+            args[i++] = user.getName();
+            args[i++] = user.getPassword();
+            args[i++] = user.getLevel().intValue();
+            args[i++] = user.getLogin();
+            args[i++] = user.getRecommend();
+            args[i++] = user.getEmail();
+        }
+        this.jdbcTemplate.update(sql.toString(), args);
     }
 
     public User get(String id) {
-        return this.jdbcTemplate.queryForObject("select * from users where id = ?",
+        return reads().queryForObject("select " + USER_COLUMNS + " from users where id = ?",
                 new Object[]{id},
-                userMapper);
+                new UserRowMapper());
+    }
+
+    // in (...) 목록이 너무 길어지지 않도록 MAX_IN_LIST_SIZE 건씩 나눠 조회한다. 없는 id는 건너뛴다.
+    public List<User> getByIds(Collection<String> ids) {
+        List<User> users = new ArrayList<>(ids.size());
+        List<String> chunk = new ArrayList<>(Math.min(ids.size(), MAX_IN_LIST_SIZE));
+        for(String id : ids){
+            chunk.add(id);
+            if(chunk.size() >= MAX_IN_LIST_SIZE){
+                users.addAll(getChunk(chunk));
+                chunk.clear();
+            }
+        }
+        if(!chunk.isEmpty()) users.addAll(getChunk(chunk));
+        return users;
+    }
+
+    private List<User> getChunk(List<String> ids) {
+        StringBuilder sql = new StringBuilder("select " + USER_COLUMNS + " from users where id in (");
+        for(int i = 0; i < ids.size(); i++){
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") order by id");
+        return reads().query(sql.toString(), new UserRowMapper(), ids.toArray());
     }
 
     public void deleteAll() {
         this.jdbcTemplate.update("delete from users");
+        if(countMode == CountMode.MAINTAINED){
+            afterCommit(() -> {
+                count.set(0);
+                countInitialized = true;
+            });
+        }
     }
 
+    // MAINTAINED 모드에서는 add/addAll/deleteAll이 커밋된 뒤 갱신한 값을 돌려준다.
+    // 다른 서버의 쓰기나 resyncCount()와 겹친 쓰기로 생긴 오차는 다음 resyncCount()가 바로잡는다.
     public Integer getCount(){
-        return this.jdbcTemplate.queryForObject("select count(*) from users", Integer.class);
+        if(countMode == CountMode.EXACT){
+            return countExactly();
+        }
+        if(!countInitialized) resyncCount();
+        return (int) count.get();
+    }
+
+    public void resyncCount(){
+        count.set(countExactly());
+        countInitialized = true;
+    }
+
+    // 이미 실행 중인 주기 작업이 있으면 멈추고 새로 시작한다.
+    public void startCountResync(long periodMillis){
+        stopCountResync();
+        countResyncScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-count-resync");
+            t.setDaemon(true);
+            return t;
+        });
+        countResyncScheduler.scheduleWithFixedDelay(() -> {
+            try{
+                resyncCount();
+            }catch (RuntimeException e){
+                // 다음 주기에 다시 맞춘다.
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stopCountResync(){
+        if(countResyncScheduler != null) countResyncScheduler.shutdownNow();
+    }
+
+    // 트랜잭션 안에서는 그 트랜잭션의 커넥션으로 읽어서 같은 트랜잭션에서 쓴 값을 본다.
+    private JdbcTemplate reads(){
+        if(readJdbcTemplate == null || TransactionSynchronizationManager.isActualTransactionActive()) return jdbcTemplate;
+        return readJdbcTemplate;
+    }
+
+    // 트랜잭션 안이면 커밋된 뒤에만 실행해서, 롤백된 쓰기가 유지하는 건수에 남지 않게 한다.
+    private void afterCommit(final Runnable action){
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }else{
+            action.run();
+        }
+    }
+
+    private int countExactly(){
+        return reads().queryForObject("select count(*) from users", Integer.class);
+    }
+
+    // sql/users_indexes.sql의 (level, login) 인덱스만 읽는다. 사용자가 없는 레벨은 0으로 채운다.
+    public EnumMap<Level, Long> getCountsByLevel(){
+        final EnumMap<Level, Long> counts = new EnumMap<>(Level.class);
+        for(Level level : Level.values()) counts.put(level, 0L);
+        reads().query("select level, count(*) from users group by level", rs -> {
+            counts.put(Level.valueOf(rs.getInt(1)), rs.getLong(2));
+        });
+        return counts;
+    }
+
+    // level이 같고 login, recommend가 각각 최소값 이상인 사용자를 id 순서로 limit 건까지 읽는다.
+    // 샤드 병합과 다른 UserDao 구현이 id 순서를 전제하므로 정렬은 그대로 두고, (level, id) 인덱스로 filesort 없이 읽는다.
+    public List<User> getUpgradeCandidates(Level level, int minLogin, int minRecommend, int limit){
+        return reads().query(
+                "select " + USER_COLUMNS + " from users where level = ? and login >= ? and recommend >= ? order by id limit ?",
+                new UserRowMapper(), level.intValue(), minLogin, minRecommend, limit);
     }
 
     public List<User> getAll(){
-        return this.jdbcTemplate.query("select * from users order by id", this.userMapper);
+        return reads().query("select " + USER_COLUMNS + " from users order by id", new UserRowMapper());
+    }
+
+    // 전진 전용, 읽기 전용 ResultSet을 fetchSize 단위로 읽으면서 한 행씩 넘긴다. 결과 전체를 목록으로 만들지 않는다.
+    // 커서가 열려 있는 동안 커넥션을 잡고 있으므로 action에서 같은 커넥션으로 다른 쿼리를 실행하면 안 된다.
+    public void forEach(final Consumer<? super User> action){
+        final UserRowMapper mapper = new UserRowMapper();
+        reads().query(con -> {
+            PreparedStatement ps = con.prepareStatement("select " + USER_COLUMNS + " from users order by id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, rs -> {
+            action.accept(mapper.mapRow(rs, 0));
+        });
+    }
+
+    // id 기준 keyset 페이징. id가 null이면 첫 페이지를 읽는다.
+    public List<User> getAllAfter(String id, int limit){
+        if(id == null){
+            return reads().query("select " + USER_COLUMNS + " from users order by id limit ?", new UserRowMapper(), limit);
+        }
+        return reads().query("select " + USER_COLUMNS + " from users where id > ? order by id limit ?", new UserRowMapper(), id, limit);
+    }
+
+    // fromId < id <= toId 범위를 읽는다. null인 쪽은 범위 제한이 없다.
+    public List<User> getAllBetween(String fromId, String toId){
+        if(fromId == null && toId == null){
+            return getAll();
+        }else if(fromId == null){
+            return reads().query("select " + USER_COLUMNS + " from users where id <= ? order by id", new UserRowMapper(), toId);
+        }else if(toId == null){
+            return reads().query("select " + USER_COLUMNS + " from users where id > ? order by id", new UserRowMapper(), fromId);
+        }
+        return reads().query("select " + USER_COLUMNS + " from users where id > ? and id <= ? order by id", new UserRowMapper(), fromId, toId);
+    }
+
+    // id 순서로 partitionSize 번째마다의 id를 돌려준다. 각 조회는 직전 경계부터 인덱스를 타고 읽는다.
+    public List<String> getIdBoundaries(int partitionSize){
+        List<String> boundaries = new ArrayList<>();
+        String lastId = null;
+        while(true){
+            List<String> ids = (lastId == null)
+                    ? reads().queryForList("select id from users order by id limit ?, 1", String.class, partitionSize - 1)
+                    : reads().queryForList("select id from users where id > ? order by id limit ?, 1", String.class, lastId, partitionSize - 1);
+            if(ids.isEmpty()) break;
+            lastId = ids.get(0);
+            boundaries.add(lastId);
+        }
+        return boundaries;
     }
 
     public void update(User user){
         this.jdbcTemplate.update(
                 "update users set name = ?, password = ?, level = ?, login = ?, recommend = ?, email = ? where id = ?", user.getName(), user.getPassword(),user.getLevel().intValue(), user.getLogin(), user.getRecommend(), user.getEmail(), user.getId());
     }
-}
 
+    // JDBC 배치로 batchSize 건씩 묶어서 한 번의 왕복으로 보낸다.
+    public void updateAll(List<User> users){
+        this.jdbcTemplate.batchUpdate(
+                "update users set name = ?, password = ?, level = ?, login = ?, recommend = ?, email = ? where id = ?",
+                users, this.batchSize,
+                new ParameterizedPreparedStatementSetter<User>() {
+                    @Override
+                    public void setValues(PreparedStatement ps, User user) throws SQLException {
+                        ps.setString(1, user.getName());
+                        ps.setString(2, user.getPassword());
+                        ps.setInt(3, user.getLevel().intValue());
+                        ps.setInt(4, user.getLogin());
+                        ps.setInt(5, user.getRecommend());
+                        ps.setString(6, user.getEmail());
+                        ps.setString(7, user.getId());
+                    }
+                });
+    }
+
+    // 업그레이드는 예전에 읽은 User로 행 전체를 다시 쓰면 그 사이에 더해진 login, recommend를 덮어쓰므로 level만 바꾼다.
+    public void updateLevels(List<User> users){
+        this.jdbcTemplate.batchUpdate("update users set level = ? where id = ?",
+                users, this.batchSize,
+                new ParameterizedPreparedStatementSetter<User>() {
+                    @Override
+                    public void setValues(PreparedStatement ps, User user) throws SQLException {
+                        ps.setInt(1, user.getLevel().intValue());
+                        ps.setString(2, user.getId());
+                    }
+                });
+    }
+
+    // 행 전체를 다시 쓰지 않고 증가분만 더한다. 동시에 다른 서버가 더한 증가분끼리는 서로 덮어쓰지 않는다.
+    // 다만 update(), updateAll()은 읽어 둔 값으로 login, recommend를 통째로 쓰므로, 그 사이의 증가분은 사라진다.
+    // batchSize 건마다 따로 실행되므로, 중간에 실패했을 때 앞 묶음까지 되돌리려면 트랜잭션 안에서 호출해야 한다.
+    public void incrementCounts(List<UserActivity> activities){
+        this.jdbcTemplate.batchUpdate(
+                "update users set login = login + ?, recommend = recommend + ? where id = ?",
+                activities, this.batchSize,
+                new ParameterizedPreparedStatementSetter<UserActivity>() {
+                    @Override
+                    public void setValues(PreparedStatement ps, UserActivity activity) throws SQLException {
+                        ps.setInt(1, activity.getLoginDelta());
+                        ps.setInt(2, activity.getRecommendDelta());
+                        ps.setString(3, activity.getId());
+                    }
+                });
+    }
+
+    // 조건에 맞는 사용자를 잠근 뒤 한 번의 UPDATE로 다음 레벨로 올리고, 올라간 사용자를 돌려준다.
+    // 조회한 목록과 실제로 변경된 행이 일치하려면 두 문장이 같은 트랜잭션이어야 하므로,
+    // 호출한 쪽에 트랜잭션이 없으면(ShardedUserDao의 샤드 스레드 등) 직접 트랜잭션을 연다.
+    public List<User> upgradeLevels(Level level, int minLogin, int minRecommend){
+        Level nextLevel = level.nextLevel();
+        if(nextLevel == null){
+            throw new IllegalArgumentException(level + "은 업그레이드가 불가합니다.");
+        }
+        if(TransactionSynchronizationManager.isActualTransactionActive()){
+            return lockAndUpgrade(level, nextLevel, minLogin, minRecommend);
+        }
+
+        TransactionStatus status = this.transactionManager.getTransaction(new DefaultTransactionDefinition());
+        List<User> users;
+        try{
+            users = lockAndUpgrade(level, nextLevel, minLogin, minRecommend);
+        }catch (RuntimeException e){
+            this.transactionManager.rollback(status);
+            throw e;
+        }
+        this.transactionManager.commit(status);
+        return users;
+    }
+
+    private List<User> lockAndUpgrade(Level level, Level nextLevel, int minLogin, int minRecommend){
+        List<User> users = this.jdbcTemplate.query(
+                "select " + USER_COLUMNS + " from users where level = ? and login >= ? and recommend >= ? order by id for update",
+                new UserRowMapper(), level.intValue(), minLogin, minRecommend);
+        if(users.isEmpty()) return users;
+
+        this.jdbcTemplate.update("update users set level = ? where level = ? and login >= ? and recommend >= ?",
+                nextLevel.intValue(), level.intValue(), minLogin, minRecommend);
+        for(User user : users){
+            user.setLevel(nextLevel);
+        }
+        return users;
+    }
+}
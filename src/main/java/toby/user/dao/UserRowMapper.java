@@ -0,0 +1,53 @@
+package toby.user.dao;
+
+import org.springframework.jdbc.core.RowMapper;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+
+// 컬럼 위치를 ResultSet마다 메타데이터에서 한 번만 찾아 두고, 행마다 인덱스로 읽는 RowMapper.
+// 찾은 위치를 필드에 담아 두므로 쿼리 하나에 하나씩 새로 만들어 쓴다.
+public class UserRowMapper implements RowMapper<User> {
+    private ResultSet resolvedFor;
+    private int id, name, password, level, login, recommend, email;
+
+    @Override
+    public User mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if(rs != resolvedFor) resolveColumns(rs);
+
+        User user = new User();
+        user.setId(rs.getString(id));
+        user.setName(rs.getString(name));
+        user.setPassword(rs.getString(password));
+        user.setLevel(Level.valueOf(rs.getInt(level)));
+        user.setLogin(rs.getInt(login));
+        user.setRecommend(rs.getInt(recommend));
+        user.setEmail(rs.getString(email));
+        return user;
+    }
+
+    private void resolveColumns(ResultSet rs) throws SQLException {
+        id = name = password = level = login = recommend = email = 0;
+
+        ResultSetMetaData metaData = rs.getMetaData();
+        for(int i = 1; i <= metaData.getColumnCount(); i++){
+            switch (metaData.getColumnLabel(i).toLowerCase(Locale.ROOT)){
+                case "id": id = i; break;
+                case "name": name = i; break;
+                case "password": password = i; break;
+                case "level": level = i; break;
+                case "login": login = i; break;
+                case "recommend": recommend = i; break;
+                case "email": email = i; break;
+            }
+        }
+        if(id == 0 || name == 0 || password == 0 || level == 0 || login == 0 || recommend == 0 || email == 0){
+            throw new SQLException("users 컬럼이 조회 결과에 모두 포함되어 있지 않습니다.");
+        }
+        resolvedFor = rs;
+    }
+}
@@ -18,12 +18,13 @@ public enum Level {
         return this.next;
     }
 
+    // intValue()를 인덱스로 하는 조회 테이블
+    private static final Level[] VALUES = {null, BASIC, SILVER, GOLD};
+
     public static Level valueOf(int value){
-        switch(value){
-            case 1: return BASIC;
-            case 2: return SILVER;
-            case 3: return GOLD;
-            default: throw new AssertionError("Unknown value: " + value);
+        if(value < 1 || value >= VALUES.length){
+            throw new AssertionError("Unknown value: " + value);
         }
+        return VALUES[value];
     }
 }
@@ -0,0 +1,68 @@
+package toby.user.domain;
+
+public class OutboxMail {
+    Long id;
+    String recipient;
+    String sender;
+    String subject;
+    String text;
+    int attempts;
+
+    public OutboxMail() {
+    }
+
+    public OutboxMail(String recipient, String sender, String subject, String text) {
+        this.recipient = recipient;
+        this.sender = sender;
+        this.subject = subject;
+        this.text = text;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public void setRecipient(String recipient) {
+        this.recipient = recipient;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public void setSender(String sender) {
+        this.sender = sender;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
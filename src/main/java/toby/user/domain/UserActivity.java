@@ -0,0 +1,41 @@
+package toby.user.domain;
+
+// 한 사용자에 대해 모아 둔 login/recommend 증가분
+public class UserActivity {
+    String id;
+    int loginDelta;
+    int recommendDelta;
+
+    public UserActivity() {
+    }
+
+    public UserActivity(String id, int loginDelta, int recommendDelta) {
+        this.id = id;
+        this.loginDelta = loginDelta;
+        this.recommendDelta = recommendDelta;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public int getLoginDelta() {
+        return loginDelta;
+    }
+
+    public void setLoginDelta(int loginDelta) {
+        this.loginDelta = loginDelta;
+    }
+
+    public int getRecommendDelta() {
+        return recommendDelta;
+    }
+
+    public void setRecommendDelta(int recommendDelta) {
+        this.recommendDelta = recommendDelta;
+    }
+}
@@ -0,0 +1,193 @@
+package toby.user.service;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// 메일을 제한된 크기의 큐에 넣고 별도 스레드에서 묶어서 보내는 MailSender 데코레이터.
+// 업그레이드 트랜잭션이 메일 서버 응답을 기다리지 않게 한다.
+// 설정을 마친 뒤 init()으로 발송 스레드를 시작하고, shutdown()으로 남은 메일을 보내고 멈춘다.
+public class AsyncMailSender implements MailSender {
+    private static final Log log = LogFactory.getLog(AsyncMailSender.class);
+    private static final long ENQUEUE_WAIT_MILLIS = 100;
+
+    // 큐가 가득 찼을 때의 처리 방식
+    public enum Backpressure {
+        BLOCK,  // 자리가 날 때까지 호출한 스레드를 기다리게 한다
+        DROP,   // 메일을 버리고 dropped 카운터만 올린다
+        SPILL   // 큐를 거치지 않고 호출한 스레드에서 바로 보낸다
+    }
+
+    private final MailSender mailSender;
+    private final BlockingQueue<SimpleMailMessage> queue;
+    private final Thread dispatcher;
+    // send()는 읽기 잠금 안에서 running을 확인하고 큐에 넣는다. shutdown()은 쓰기 잠금으로 running을 내리므로
+    // 마지막 drain 뒤에 큐에 들어와 버려지는 메일이 없다. 읽기 잠금은 ENQUEUE_WAIT_MILLIS보다 오래 쥐지 않는다.
+    private final ReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+    private boolean started;
+
+    private volatile Backpressure backpressure = Backpressure.BLOCK;
+    private volatile int maxBatchSize = 50;
+    private volatile long shutdownTimeoutMillis = 10000;
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public AsyncMailSender(MailSender mailSender, int capacity) {
+        this.mailSender = mailSender;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.dispatcher = new Thread(this::dispatch, "mail-dispatcher");
+        this.dispatcher.setDaemon(true);
+    }
+
+    // 발송 스레드를 시작한다. 그 전에 보낸 메일은 큐에 쌓였다가 시작하면서 나간다.
+    public synchronized void init() {
+        if(started) return;
+        if(!running){
+            throw new IllegalStateException("AsyncMailSender가 이미 종료되었습니다.");
+        }
+        started = true;
+        dispatcher.start();
+    }
+
+    public void setBackpressure(Backpressure backpressure) {
+        this.backpressure = backpressure;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        if(maxBatchSize <= 0){
+            throw new IllegalArgumentException("maxBatchSize는 1 이상이어야 합니다: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    @Override
+    public void send(SimpleMailMessage simpleMessage) throws MailException {
+        while(true){
+            lifecycleLock.readLock().lock();
+            try{
+                if(!running){
+                    throw new IllegalStateException("AsyncMailSender가 이미 종료되었습니다.");
+                }
+                if(enqueue(simpleMessage)) return;
+            }finally{
+                lifecycleLock.readLock().unlock();
+            }
+        }
+    }
+
+    // 처리했으면 true를 돌려준다. BLOCK은 잠금을 쥔 채 무한정 기다리지 않고 짧게 기다렸다가 false를 돌려주므로,
+    // send()가 잠금을 놓고 running을 다시 확인한다. 발송 스레드가 없어도 shutdown()이 잠금을 얻을 수 있다.
+    private boolean enqueue(SimpleMailMessage simpleMessage) {
+        switch (backpressure){
+            case BLOCK:
+                try{
+                    if(!queue.offer(simpleMessage, ENQUEUE_WAIT_MILLIS, TimeUnit.MILLISECONDS)) return false;
+                }catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new MailSendException("메일을 큐에 넣는 중 인터럽트되었습니다.", e);
+                }
+                queued.increment();
+                break;
+            case DROP:
+                if(queue.offer(simpleMessage)) queued.increment();
+                else dropped.increment();
+                break;
+            case SPILL:
+                if(queue.offer(simpleMessage)) queued.increment();
+                else sendBatch(simpleMessage);
+                break;
+        }
+        return true;
+    }
+
+    @Override
+    public void send(SimpleMailMessage... simpleMessages) throws MailException {
+        for(SimpleMailMessage simpleMessage : simpleMessages){
+            send(simpleMessage);
+        }
+    }
+
+    // 새 메일을 받지 않고, 큐에 남은 메일을 모두 보낸 뒤 종료한다.
+    public void shutdown() throws InterruptedException {
+        lifecycleLock.writeLock().lock();
+        try{
+            running = false;
+        }finally{
+            lifecycleLock.writeLock().unlock();
+        }
+        synchronized(this){
+            if(started) dispatcher.join(shutdownTimeoutMillis);
+        }
+
+        List<SimpleMailMessage> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if(!rest.isEmpty()) sendBatch(rest.toArray(new SimpleMailMessage[0]));
+    }
+
+    private void dispatch(){
+        List<SimpleMailMessage> batch = new ArrayList<>();
+        while(running || !queue.isEmpty()){
+            try{
+                SimpleMailMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null) continue;
+
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                sendBatch(batch.toArray(new SimpleMailMessage[0]));
+                batch.clear();
+            }catch (InterruptedException e){
+                return;
+            }
+        }
+    }
+
+    private void sendBatch(SimpleMailMessage... batch){
+        try{
+            mailSender.send(batch);
+            sent.add(batch.length);
+        }catch (RuntimeException e){
+            failed.add(batch.length);
+            log.error("메일 " + batch.length + "통을 보내지 못했습니다.", e);
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getQueued() {
+        return queued.sum();
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+}
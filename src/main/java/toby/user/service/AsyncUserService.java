@@ -0,0 +1,12 @@
+package toby.user.service;
+
+import toby.user.domain.User;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncUserService {
+    CompletableFuture<Void> add(User user);
+    CompletableFuture<Void> addAll(Collection<User> users);
+    CompletableFuture<Void> upgradeLevels();
+}
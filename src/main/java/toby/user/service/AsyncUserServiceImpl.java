@@ -0,0 +1,89 @@
+package toby.user.service;
+
+import toby.user.domain.User;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// UserService 호출을 가상 스레드에서 실행하고 CompletableFuture로 돌려주는 비동기 파사드.
+// 가상 스레드는 사실상 무제한으로 만들 수 있으므로, 동시에 UserService에 들어가는 호출 수는
+// 세마포어로 커넥션 풀 크기(maxConcurrency)까지만 허용한다. 나머지는 가상 스레드 안에서 기다린다.
+// 세마포어와 PooledDataSource는 모두 j.u.c 락을 쓰므로 기다리는 동안 캐리어 스레드를 붙잡지(pinning) 않는다.
+public class AsyncUserServiceImpl implements AsyncUserService {
+    private UserService userService;
+    private ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Semaphore permits = new Semaphore(10, true);
+    private final AtomicInteger active = new AtomicInteger();
+    private long shutdownTimeoutMillis = 10000;
+
+    // 트랜잭션 경계가 적용된 UserService(UserServiceTx)를 넣는다.
+    public void setUserService(UserService userService) {
+        this.userService = userService;
+    }
+
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    // PooledDataSource의 maxSize와 같게 맞춘다. 이미 받은 호출은 바꾸기 전의 한도로 실행된다.
+    public void setMaxConcurrency(int maxConcurrency) {
+        if(maxConcurrency <= 0){
+            throw new IllegalArgumentException("maxConcurrency는 1 이상이어야 합니다: " + maxConcurrency);
+        }
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    public CompletableFuture<Void> add(final User user) {
+        return submit(() -> userService.add(user));
+    }
+
+    public CompletableFuture<Void> addAll(final Collection<User> users) {
+        return submit(() -> userService.addAll(users));
+    }
+
+    public CompletableFuture<Void> upgradeLevels() {
+        return submit(() -> userService.upgradeLevels());
+    }
+
+    // 지금 UserService 안에서 실행 중인 호출 수. 한도를 바꿔도 맞도록 세마포어와 따로 센다.
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    // 새 작업을 받지 않고, 이미 받은 작업이 끝날 때까지 shutdownTimeoutMillis만큼 기다린다.
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if(!executor.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)){
+            executor.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<Void> submit(final Runnable task) {
+        final Semaphore permits = this.permits;
+        return CompletableFuture.runAsync(() -> {
+            try{
+                permits.acquire();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            active.incrementAndGet();
+            try{
+                task.run();
+            }finally{
+                active.decrementAndGet();
+                permits.release();
+            }
+        }, executor);
+    }
+}
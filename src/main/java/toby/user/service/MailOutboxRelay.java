@@ -0,0 +1,189 @@
+package toby.user.service;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import toby.user.dao.MailOutboxDao;
+import toby.user.domain.OutboxMail;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// outbox에 쌓인 메일을 batchSize 단위로 실제 MailSender로 보내고 발송 완료로 표시한다.
+// 읽은 메일은 짧은 트랜잭션 안에서 leaseMillis 동안 잡아 두고 커밋한 뒤에 보내므로, SMTP 발송 중에는 행 잠금을 쥐고 있지 않다.
+// 발송에 실패한 묶음은 retryBackoffMillis부터 시도할 때마다 두 배씩 늘어나는 간격 뒤에 다시 보내며,
+// maxAttempts번 시도한 메일은 더 이상 보내지 않고, getExhausted()로 확인하거나 purgeExhausted()로 지운다.
+public class MailOutboxRelay {
+    private static final Log log = LogFactory.getLog(MailOutboxRelay.class);
+
+    private MailOutboxDao mailOutboxDao;
+    private MailSender mailSender;
+    private PlatformTransactionManager transactionManager;
+    private int batchSize = 100;
+    private int maxAttempts = 5;
+    private long leaseMillis = 5 * 60 * 1000;
+    private long retryBackoffMillis = 30 * 1000;
+    private long maxRetryBackoffMillis = 60 * 60 * 1000;
+    private ScheduledExecutorService scheduler;
+
+    public void setMailOutboxDao(MailOutboxDao mailOutboxDao) {
+        this.mailOutboxDao = mailOutboxDao;
+    }
+
+    public void setMailSender(MailSender mailSender) {
+        this.mailSender = mailSender;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    // 발송 결과를 기록하기 전에 릴레이가 죽으면 이 시간이 지난 뒤 다른 릴레이가 다시 보낸다. 발송에 걸리는 시간보다 길게 잡는다.
+    public void setLeaseMillis(long leaseMillis) {
+        this.leaseMillis = leaseMillis;
+    }
+
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public void setMaxRetryBackoffMillis(long maxRetryBackoffMillis) {
+        this.maxRetryBackoffMillis = maxRetryBackoffMillis;
+    }
+
+    // 한 묶음을 처리하고 읽어 온 메일 수를 돌려준다.
+    public int relay(){
+        List<OutboxMail> mails = claim();
+        if(mails.isEmpty()) return 0;
+
+        List<Long> ids = new ArrayList<>(mails.size());
+        SimpleMailMessage[] messages = new SimpleMailMessage[mails.size()];
+        for(int i = 0; i < mails.size(); i++){
+            ids.add(mails.get(i).getId());
+            messages[i] = toMessage(mails.get(i));
+        }
+
+        try{
+            mailSender.send(messages);
+        }catch (RuntimeException e){
+            log.warn("outbox 메일 " + mails.size() + "건 발송 실패, 나중에 다시 보냅니다.", e);
+            reschedule(mails);
+            return mails.size();
+        }
+        mailOutboxDao.markDelivered(ids);
+        return mails.size();
+    }
+
+    // 보낼 차례가 된 메일을 읽어 시도 횟수를 올리고 leaseMillis 동안 잡아 둔다. 잠금은 커밋과 함께 풀린다.
+    private List<OutboxMail> claim(){
+        TransactionStatus status = this.transactionManager.getTransaction(new DefaultTransactionDefinition());
+        try{
+            long now = System.currentTimeMillis();
+            List<OutboxMail> mails = mailOutboxDao.getUndelivered(batchSize, maxAttempts, new Date(now));
+            if(!mails.isEmpty()){
+                List<Long> ids = new ArrayList<>(mails.size());
+                for(OutboxMail mail : mails){
+                    ids.add(mail.getId());
+                    mail.setAttempts(mail.getAttempts() + 1);
+                }
+                mailOutboxDao.claim(ids, new Date(now + leaseMillis));
+            }
+            this.transactionManager.commit(status);
+            return mails;
+        }catch (RuntimeException e){
+            this.transactionManager.rollback(status);
+            throw e;
+        }
+    }
+
+    // 지금까지의 시도 횟수가 같은 메일끼리 묶어 다음 시도 시각을 정한다.
+    // 마지막 시도까지 실패한 메일은 lease만 풀어 바로 소진된 메일로 조회되게 한다.
+    private void reschedule(List<OutboxMail> mails){
+        Map<Integer, List<Long>> idsByAttempts = new TreeMap<>();
+        for(OutboxMail mail : mails){
+            idsByAttempts.computeIfAbsent(mail.getAttempts(), k -> new ArrayList<>()).add(mail.getId());
+        }
+        long now = System.currentTimeMillis();
+        for(Map.Entry<Integer, List<Long>> entry : idsByAttempts.entrySet()){
+            if(entry.getKey() >= maxAttempts){
+                log.error("outbox 메일 " + entry.getValue() + "을 " + maxAttempts + "번 시도하고도 보내지 못해 더 이상 보내지 않습니다.");
+                mailOutboxDao.reschedule(entry.getValue(), new Date(now));
+            }else{
+                mailOutboxDao.reschedule(entry.getValue(), new Date(now + backoffMillis(entry.getKey())));
+            }
+        }
+    }
+
+    private long backoffMillis(int attempts){
+        int doublings = Math.min(Math.max(attempts - 1, 0), 30);
+        return Math.min(maxRetryBackoffMillis, retryBackoffMillis << doublings);
+    }
+
+    // 실패한 묶음은 다음 시도 시각이 뒤로 밀리므로 같은 묶음을 곧바로 다시 읽지 않는다.
+    public void relayAll(){
+        while(relay() == batchSize);
+    }
+
+    public List<OutboxMail> getExhausted(int limit){
+        return mailOutboxDao.getExhausted(limit, maxAttempts, new Date());
+    }
+
+    public int getExhaustedCount(){
+        return mailOutboxDao.getExhaustedCount(maxAttempts, new Date());
+    }
+
+    // 소진된 메일을 지우고 지운 건수를 돌려준다.
+    public int purgeExhausted(){
+        return mailOutboxDao.deleteExhausted(maxAttempts, new Date());
+    }
+
+    // 스레드 덤프에서 구분되도록 이름을 붙이고, stop()을 부르지 않아도 JVM 종료를 막지 않게 데몬으로 만든다.
+    public void start(long periodMillis){
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mail-outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try{
+                relayAll();
+            }catch (RuntimeException e){
+                // 잡아 두지 못한 메일은 다음 주기에, 발송 결과를 기록하지 못한 메일은 lease가 끝난 뒤에 다시 보낸다.
+                log.warn("outbox 릴레이 실패", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() throws InterruptedException {
+        if(scheduler == null) return;
+        scheduler.shutdown();
+        scheduler.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private SimpleMailMessage toMessage(OutboxMail mail){
+        SimpleMailMessage mailMessage = new SimpleMailMessage();
+        mailMessage.setTo(mail.getRecipient());
+        mailMessage.setFrom(mail.getSender());
+        mailMessage.setSubject(mail.getSubject());
+        mailMessage.setText(mail.getText());
+        return mailMessage;
+    }
+}
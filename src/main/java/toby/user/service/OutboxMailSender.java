@@ -0,0 +1,35 @@
+package toby.user.service;
+
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+import toby.user.dao.MailOutboxDao;
+import toby.user.domain.OutboxMail;
+
+// 메일을 바로 보내지 않고 outbox 테이블에 기록하는 MailSender.
+// 호출한 쪽의 트랜잭션에 참여하므로 업그레이드가 롤백되면 메일 기록도 함께 롤백된다.
+public class OutboxMailSender implements MailSender {
+    private MailOutboxDao mailOutboxDao;
+
+    public void setMailOutboxDao(MailOutboxDao mailOutboxDao) {
+        this.mailOutboxDao = mailOutboxDao;
+    }
+
+    // 받는 사람이 없거나 메일 주소가 없는 사용자는 건너뛴다. recipient는 not null이므로, 기록하면 호출한 쪽의 트랜잭션까지 실패한다.
+    @Override
+    public void send(SimpleMailMessage simpleMessage) throws MailException {
+        if(simpleMessage.getTo() == null) return;
+        for(String recipient : simpleMessage.getTo()){
+            if(recipient == null) continue;
+            mailOutboxDao.add(new OutboxMail(recipient, simpleMessage.getFrom(),
+                    simpleMessage.getSubject(), simpleMessage.getText()));
+        }
+    }
+
+    @Override
+    public void send(SimpleMailMessage... simpleMessages) throws MailException {
+        for(SimpleMailMessage simpleMessage : simpleMessages){
+            send(simpleMessage);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package toby.user.service;
+
+// 병렬 업그레이드에서 id 구간(fromId < id <= toId) 하나의 처리 결과
+public class PartitionResult {
+    private final String fromId;
+    private final String toId;
+    private final int scanned;
+    private final int upgraded;
+
+    public PartitionResult(String fromId, String toId, int scanned, int upgraded) {
+        this.fromId = fromId;
+        this.toId = toId;
+        this.scanned = scanned;
+        this.upgraded = upgraded;
+    }
+
+    public String getFromId() {
+        return fromId;
+    }
+
+    public String getToId() {
+        return toId;
+    }
+
+    public int getScanned() {
+        return scanned;
+    }
+
+    public int getUpgraded() {
+        return upgraded;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + fromId + ", " + toId + "] scanned=" + scanned + ", upgraded=" + upgraded;
+    }
+}
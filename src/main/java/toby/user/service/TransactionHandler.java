@@ -0,0 +1,91 @@
+package toby.user.service;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import org.springframework.transaction.interceptor.TransactionAttributeEditor;
+import org.springframework.util.PatternMatchUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 메소드 이름 패턴별로 지정한 트랜잭션 속성에 따라 target 호출을 트랜잭션으로 감싸는 InvocationHandler.
+// 속성 값은 "PROPAGATION_REQUIRED,ISOLATION_READ_COMMITTED,timeout_10,readOnly" 형식이고,
+// NONE이거나 어느 패턴에도 맞지 않는 메소드는 트랜잭션 매니저를 거치지 않고 바로 호출한다.
+public class TransactionHandler implements InvocationHandler {
+    public static final String NO_TRANSACTION = "NONE";
+    private static final Object NONE = new Object();
+
+    private Object target;
+    private PlatformTransactionManager transactionManager;
+    private final Map<String, Object> attributes = new LinkedHashMap<>();
+    private final ConcurrentHashMap<Method, Object> resolved = new ConcurrentHashMap<>();
+
+    public void setTarget(Object target) {
+        this.target = target;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    public void setTransactionAttributes(Properties transactionAttributes) {
+        for(String pattern : transactionAttributes.stringPropertyNames()){
+            String value = transactionAttributes.getProperty(pattern).trim();
+            if(value.equals(NO_TRANSACTION)){
+                attributes.put(pattern, NONE);
+            }else{
+                TransactionAttributeEditor editor = new TransactionAttributeEditor();
+                editor.setAsText(value);
+                attributes.put(pattern, editor.getValue());
+            }
+        }
+        resolved.clear();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object attribute = resolved.computeIfAbsent(method, m -> attributeFor(m.getName()));
+        if(attribute == NONE){
+            try{
+                return method.invoke(target, args);
+            }catch (InvocationTargetException e){
+                throw e.getTargetException();
+            }
+        }
+
+        TransactionAttribute transactionAttribute = (TransactionAttribute) attribute;
+        TransactionStatus status = this.transactionManager.getTransaction(transactionAttribute);
+        Object result;
+        try{
+            result = method.invoke(target, args);
+        }catch (InvocationTargetException e){
+            Throwable ex = e.getTargetException();
+            if(transactionAttribute.rollbackOn(ex)) this.transactionManager.rollback(status);
+            else this.transactionManager.commit(status);
+            throw ex;
+        }
+        this.transactionManager.commit(status);
+        return result;
+    }
+
+    // 이름이 똑같은 항목을 먼저 쓰고, 없으면 맞는 패턴 중 가장 긴 것을 쓴다.
+    private Object attributeFor(String methodName) {
+        Object attribute = attributes.get(methodName);
+        if(attribute != null) return attribute;
+
+        String bestPattern = null;
+        for(String pattern : attributes.keySet()){
+            if(PatternMatchUtils.simpleMatch(pattern, methodName)
+                    && (bestPattern == null || pattern.length() > bestPattern.length())){
+                bestPattern = pattern;
+            }
+        }
+        return (bestPattern != null) ? attributes.get(bestPattern) : NONE;
+    }
+}
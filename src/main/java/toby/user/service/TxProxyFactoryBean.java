@@ -0,0 +1,52 @@
+package toby.user.service;
+
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.lang.reflect.Proxy;
+import java.util.Properties;
+
+// serviceInterface를 구현하고 TransactionHandler로 트랜잭션 경계를 적용하는 다이내믹 프록시를 만든다.
+// UserServiceTx처럼 메소드마다 트랜잭션 코드를 직접 작성하지 않아도 된다.
+public class TxProxyFactoryBean implements FactoryBean<Object> {
+    Object target;
+    PlatformTransactionManager transactionManager;
+    Class<?> serviceInterface;
+    Properties transactionAttributes = new Properties();
+
+    public void setTarget(Object target) {
+        this.target = target;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    public void setServiceInterface(Class<?> serviceInterface) {
+        this.serviceInterface = serviceInterface;
+    }
+
+    public void setTransactionAttributes(Properties transactionAttributes) {
+        this.transactionAttributes = transactionAttributes;
+    }
+
+    @Override
+    public Object getObject() throws Exception {
+        TransactionHandler txHandler = new TransactionHandler();
+        txHandler.setTarget(target);
+        txHandler.setTransactionManager(transactionManager);
+        txHandler.setTransactionAttributes(transactionAttributes);
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{serviceInterface}, txHandler);
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return serviceInterface;
+    }
+
+    // target이 바뀔 수 있으므로 요청할 때마다 새 프록시를 만든다.
+    @Override
+    public boolean isSingleton() {
+        return false;
+    }
+}
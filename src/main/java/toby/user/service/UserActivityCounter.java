@@ -0,0 +1,168 @@
+package toby.user.service;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import toby.user.dao.UserDao;
+import toby.user.domain.UserActivity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// 로그인/추천 횟수 증가를 사용자별 LongAdder에 모았다가 주기적으로 한 번의 배치 UPDATE로 반영한다.
+// 반영되지 않은 증가분은 서버가 비정상 종료되면 사라진다. 그 양은 flush 주기와 maxPendingIncrements로 제한하고,
+// stop()은 남은 증가분을 모두 반영한 뒤 끝난다.
+// 한 번의 flush는 하나의 트랜잭션으로 반영하므로, 실패하면 일부 묶음만 반영된 채로 증가분을 되돌려 놓는 일이 없다.
+public class UserActivityCounter {
+    private UserDao userDao;
+    private PlatformTransactionManager transactionManager;
+    private long maxPendingIncrements = 0;
+
+    private final ConcurrentHashMap<String, Counts> counts = new ConcurrentHashMap<>();
+    private final LongAdder pending = new LongAdder();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private ScheduledExecutorService scheduler;
+
+    public void setUserDao(UserDao userDao) {
+        this.userDao = userDao;
+    }
+
+    // UserDaoJdbc는 batchSize 건마다 나눠 보내므로 트랜잭션 매니저를 함께 넣어야 한다.
+    // 한 번에 모두 반영하거나 모두 실패하는 DAO라면 없어도 된다.
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    // 반영되지 않은 증가분이 이만큼 쌓이면 주기를 기다리지 않고 flush한다. 0이면 주기에만 맡긴다.
+    public void setMaxPendingIncrements(long maxPendingIncrements) {
+        this.maxPendingIncrements = maxPendingIncrements;
+    }
+
+    public void recordLogin(String id) {
+        record(id, 1, 0);
+    }
+
+    public void recordRecommend(String id) {
+        record(id, 0, 1);
+    }
+
+    public long getPendingIncrements() {
+        return pending.sum();
+    }
+
+    // 쌓인 증가분을 반영하고 반영한 사용자 수를 돌려준다. DB 반영에 실패하면 증가분을 되돌려 놓고 예외를 던진다.
+    public int flush() {
+        flushRequested.set(false);
+        List<UserActivity> activities = new ArrayList<>();
+        long drained = 0;
+        for(Map.Entry<String, Counts> entry : counts.entrySet()){
+            Counts c = entry.getValue();
+            long login = c.login.sumThenReset();
+            long recommend = c.recommend.sumThenReset();
+            if(login == 0 && recommend == 0){
+                // 한 주기 동안 증가가 없던 사용자는 정리한다. 그 사이에 들어온 증가분은 한 번 더 비워서 함께 반영한다.
+                c.retired = true;
+                counts.remove(entry.getKey(), c);
+                login = c.login.sumThenReset();
+                recommend = c.recommend.sumThenReset();
+                if(login == 0 && recommend == 0) continue;
+            }
+            activities.add(new UserActivity(entry.getKey(), (int) login, (int) recommend));
+            drained += login + recommend;
+        }
+        if(activities.isEmpty()) return 0;
+
+        pending.add(-drained);
+        try{
+            incrementCounts(activities);
+        }catch (RuntimeException e){
+            // 되돌려 놓는 중에는 flush를 다시 요청하지 않는다. DB가 계속 실패하면 여기서 재귀하게 된다.
+            for(UserActivity activity : activities){
+                add(activity.getId(), activity.getLoginDelta(), activity.getRecommendDelta());
+            }
+            throw e;
+        }
+        return activities.size();
+    }
+
+    private void incrementCounts(List<UserActivity> activities) {
+        if(transactionManager == null){
+            userDao.incrementCounts(activities);
+            return;
+        }
+
+        TransactionStatus status = this.transactionManager.getTransaction(new DefaultTransactionDefinition());
+        try{
+            userDao.incrementCounts(activities);
+        }catch (RuntimeException e){
+            this.transactionManager.rollback(status);
+            throw e;
+        }
+        this.transactionManager.commit(status);
+    }
+
+    public void start(long periodMillis) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-activity-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // 예약된 flush를 멈추고 남은 증가분을 반영한다.
+    public void stop() throws InterruptedException {
+        if(scheduler != null){
+            scheduler.shutdown();
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        }
+        flush();
+    }
+
+    private void record(String id, long login, long recommend) {
+        add(id, login, recommend);
+        if(maxPendingIncrements > 0 && pending.sum() >= maxPendingIncrements && flushRequested.compareAndSet(false, true)){
+            if(scheduler != null && !scheduler.isShutdown()) scheduler.execute(this::flushQuietly);
+            else flushQuietly();
+        }
+    }
+
+    // flush()가 사용자를 정리하는 사이에 증가한 경우, 정리된 Counts에 남은 값을 직접 비워 새 항목으로 옮긴다.
+    // flush()와 여기서 모두 sumThenReset()으로 비우므로 같은 증가분이 두 번 반영되지 않는다.
+    private void add(String id, long login, long recommend) {
+        long total = login + recommend;
+        while(true){
+            Counts c = counts.computeIfAbsent(id, k -> new Counts());
+            if(login != 0) c.login.add(login);
+            if(recommend != 0) c.recommend.add(recommend);
+            if(!c.retired) break;
+
+            login = c.login.sumThenReset();
+            recommend = c.recommend.sumThenReset();
+            if(login == 0 && recommend == 0) break;
+        }
+
+        pending.add(total);
+    }
+
+    private void flushQuietly() {
+        try{
+            flush();
+        }catch (RuntimeException e){
+            // 증가분은 되돌려 놓았으므로 다음 주기에 다시 반영한다.
+        }
+    }
+
+    private static class Counts {
+        final LongAdder login = new LongAdder();
+        final LongAdder recommend = new LongAdder();
+        volatile boolean retired;
+    }
+}
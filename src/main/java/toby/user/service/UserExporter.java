@@ -0,0 +1,207 @@
+package toby.user.service;
+
+import toby.user.dao.UserDao;
+import toby.user.domain.User;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+// UserDao.forEach()로 사용자를 한 명씩 받아 CSV 또는 NDJSON 한 줄로 인코딩해 채널에 쓴다.
+// 줄은 재사용하는 StringBuilder에서 만들어 bufferSize 크기의 버퍼에 UTF-8로 바로 인코딩하고, 버퍼가 차면 채널(또는 gzip)로 내보낸다.
+// 사용자 수와 상관없이 메모리에는 버퍼 하나와 처리 중인 User 하나만 남는다. 비밀번호는 내보내지 않는다.
+public class UserExporter {
+    public enum Format { CSV, NDJSON }
+
+    private static final int MIN_BUFFER_SIZE = 4;
+    private static final String CSV_HEADER = "id,name,level,login,recommend,email\n";
+
+    private UserDao userDao;
+    private Format format = Format.CSV;
+    private boolean gzip;
+    private int bufferSize = 64 * 1024;
+
+    public void setUserDao(UserDao userDao) {
+        this.userDao = userDao;
+    }
+
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    // 인코더는 한 문자의 UTF-8 바이트(보조 문자는 4바이트)가 버퍼에 통째로 들어가야 진행하므로 그보다 작으면 끝나지 않는다.
+    public void setBufferSize(int bufferSize) {
+        if(bufferSize < MIN_BUFFER_SIZE){
+            throw new IllegalArgumentException("bufferSize는 " + MIN_BUFFER_SIZE + " 이상이어야 합니다: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    // 파일을 새로 쓰고 내보낸 사용자 수를 돌려준다.
+    public long export(Path target) throws IOException {
+        try(FileChannel channel = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            return export(channel);
+        }
+    }
+
+    // 채널은 닫지 않는다. gzip이면 트레일러까지 쓴 뒤 돌려준다.
+    public long export(WritableByteChannel channel) throws IOException {
+        Output output = new Output(channel);
+        StringBuilder line = new StringBuilder(256);
+        long[] count = new long[1];
+
+        if(format == Format.CSV) output.write(CSV_HEADER);
+        try{
+            userDao.forEach(user -> {
+                line.setLength(0);
+                if(format == Format.CSV) appendCsv(line, user);
+                else appendJson(line, user);
+                try{
+                    output.write(line);
+                }catch (IOException e){
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+        }catch (UncheckedIOException e){
+            throw e.getCause();
+        }
+        output.finish();
+        return count[0];
+    }
+
+    private static void appendCsv(StringBuilder line, User user) {
+        appendCsvField(line, user.getId()).append(',');
+        appendCsvField(line, user.getName()).append(',');
+        line.append(user.getLevel().name()).append(',');
+        line.append(user.getLogin()).append(',');
+        line.append(user.getRecommend()).append(',');
+        appendCsvField(line, user.getEmail()).append('\n');
+    }
+
+    // RFC 4180: 쉼표, 따옴표, 줄바꿈이 있으면 따옴표로 감싸고 안의 따옴표는 두 번 쓴다. null은 빈 칸.
+    private static StringBuilder appendCsvField(StringBuilder line, String value) {
+        if(value == null) return line;
+
+        boolean quote = false;
+        for(int i = 0; i < value.length() && !quote; i++){
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if(!quote) return line.append(value);
+
+        line.append('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c == '"') line.append('"');
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    private static void appendJson(StringBuilder line, User user) {
+        line.append("{\"id\":");
+        appendJsonString(line, user.getId());
+        line.append(",\"name\":");
+        appendJsonString(line, user.getName());
+        line.append(",\"level\":\"").append(user.getLevel().name()).append('"');
+        line.append(",\"login\":").append(user.getLogin());
+        line.append(",\"recommend\":").append(user.getRecommend());
+        line.append(",\"email\":");
+        appendJsonString(line, user.getEmail());
+        line.append("}\n");
+    }
+
+    private static void appendJsonString(StringBuilder line, String value) {
+        if(value == null){
+            line.append("null");
+            return;
+        }
+
+        line.append('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            switch (c){
+                case '"': line.append("\\\""); break;
+                case '\\': line.append("\\\\"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                case '\t': line.append("\\t"); break;
+                default:
+                    if(c < 0x20){
+                        line.append(String.format("\\u%04x", (int) c));
+                    }else{
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    // 한 번의 export() 동안만 쓰는 인코더와 버퍼. gzip이면 버퍼 내용을 GZIPOutputStream으로, 아니면 채널로 바로 보낸다.
+    private class Output {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final GZIPOutputStream gzipStream;
+
+        Output(WritableByteChannel channel) throws IOException {
+            this.channel = channel;
+            if(gzip){
+                OutputStream out = Channels.newOutputStream(channel);
+                this.gzipStream = new GZIPOutputStream(out, bufferSize);
+            }else{
+                this.gzipStream = null;
+            }
+        }
+
+        void write(CharSequence text) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            while(true){
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if(result.isOverflow()){
+                    drain();
+                }else{
+                    if(result.isError()) result.throwException();
+                    break;
+                }
+            }
+            while(encoder.flush(buffer).isOverflow()) drain();
+        }
+
+        void finish() throws IOException {
+            drain();
+            if(gzipStream != null) gzipStream.finish();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            if(gzipStream != null){
+                gzipStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            }else{
+                while(buffer.hasRemaining()) channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -2,7 +2,15 @@ package toby.user.service;
 
 import toby.user.domain.User;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface UserService {
     void add(User user);
+    void addAll(Collection<User> users);
     void upgradeLevels();
+    void upgradeLevelsByPage(int pageSize);
+    void upgradeLevelsIncrementally(int batchSize);
+    void upgradeLevelsInDatabase();
+    List<PartitionResult> upgradeLevelsInParallel(int partitionSize);
 }
@@ -5,12 +5,22 @@ import org.springframework.mail.SimpleMailMessage;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import toby.user.dao.UserChangeTracker;
 import toby.user.dao.UserDao;
 import toby.user.domain.Level;
 import toby.user.domain.User;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class UserServiceImpl implements UserService{
     UserDao userDao;
@@ -19,6 +29,10 @@ public class UserServiceImpl implements UserService{
     private DataSource dataSource;
     private PlatformTransactionManager transactionManager;
     private MailSender mailSender;
+    private int updateBatchSize = 100;
+    private Executor executor;
+    private int parallelism = 4;
+    private UserChangeTracker changeTracker;
 
     public void setMailSender(MailSender mailSender) {
         this.mailSender = mailSender;
@@ -32,6 +46,29 @@ public class UserServiceImpl implements UserService{
         this.dataSource = dataSource;
     }
 
+    public void setUpdateBatchSize(int updateBatchSize) {
+        this.updateBatchSize = updateBatchSize;
+    }
+
+    // 병렬 업그레이드에 사용할 실행기. 동시 실행 수는 커넥션 풀 크기를 넘지 않게 잡는다.
+    // 지정하지 않으면 호출마다 parallelism 크기의 전용 스레드 풀을 만들고 끝나면 닫는다.
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    // 구간 작업은 JDBC에서 블로킹되므로 공용 ForkJoinPool 대신 이 수만큼의 스레드로 제한한다.
+    public void setParallelism(int parallelism) {
+        if(parallelism <= 0){
+            throw new IllegalArgumentException("parallelism은 1 이상이어야 합니다: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    // ChangeTrackingUserDao와 같은 tracker를 넣어야 upgradeLevelsIncrementally()가 변경된 사용자만 평가한다.
+    public void setChangeTracker(UserChangeTracker changeTracker) {
+        this.changeTracker = changeTracker;
+    }
+
     public void setUserDao(UserDao userDao) {
         this.userDao = userDao;
     }
@@ -41,15 +78,134 @@ public class UserServiceImpl implements UserService{
         userDao.add(user);
     }
 
-    public void upgradeLevels(){
-        List<User> users = userDao.getAll();
+    public void addAll(Collection<User> users){
         for(User user : users){
-            if(canUpgradeLevel(user)){
-                upgradeLevel(user);
+            if(user.getLevel() == null) user.setLevel(Level.BASIC);
+        }
+        userDao.addAll(users);
+    }
+
+    public void upgradeLevels(){
+        upgradeUsers(userDao.getAll());
+    }
+
+
+    // 전체 목록을 한 번에 읽지 않고 id 순서의 페이지 단위로 읽어, 페이지마다 별도의 트랜잭션으로 커밋한다.
+    public void upgradeLevelsByPage(int pageSize){
+        if(pageSize <= 0){
+            throw new IllegalArgumentException("pageSize는 1 이상이어야 합니다: " + pageSize);
+        }
+        String lastId = null;
+        while(true){
+            List<User> users;
+            TransactionStatus status = this.transactionManager.getTransaction(new DefaultTransactionDefinition());
+            try{
+                users = userDao.getAllAfter(lastId, pageSize);
+                upgradeUsers(users);
+                this.transactionManager.commit(status);
+            }catch (RuntimeException e){
+                this.transactionManager.rollback(status);
+                throw e;
+            }
+
+            if(users.size() < pageSize) break;
+            lastId = users.get(users.size() - 1).getId();
+        }
+    }
+
+    // 마지막 실행 이후 변경된 사용자만 batchSize 건씩 읽어 평가하고, 묶음마다 별도의 트랜잭션으로 커밋한다.
+    // 시작할 때 쌓여 있던 id만 처리하므로, 이번 실행에서 올라간 사용자는 다음 실행에서 다시 평가된다.
+    // 실패한 묶음과 남은 id는 tracker에 되돌려 놓는다. tracker가 없으면 전체를 페이지 단위로 검사한다.
+    public void upgradeLevelsIncrementally(int batchSize){
+        if(batchSize <= 0){
+            throw new IllegalArgumentException("batchSize는 1 이상이어야 합니다: " + batchSize);
+        }
+        if(changeTracker == null){
+            upgradeLevelsByPage(batchSize);
+            return;
+        }
+
+        List<String> ids = changeTracker.drain(Integer.MAX_VALUE);
+        for(int from = 0; from < ids.size(); from += batchSize){
+            List<String> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            TransactionStatus status = this.transactionManager.getTransaction(new DefaultTransactionDefinition());
+            try{
+                upgradeUsers(userDao.getByIds(batch));
+                this.transactionManager.commit(status);
+            }catch (RuntimeException e){
+                this.transactionManager.rollback(status);
+                changeTracker.markDirty(ids.subList(from, ids.size()));
+                throw e;
+            }
+        }
+    }
+
+    // canUpgradeLevel()과 같은 조건을 DB에서 직접 적용한다. 변경된 사용자만 읽어 와서 메일을 보낸다.
+    // 한 번의 실행에서 BASIC 사용자가 GOLD까지 오르지 않도록 SILVER -> GOLD를 먼저 처리한다.
+    public void upgradeLevelsInDatabase(){
+        List<User> upgraded = new ArrayList<>(userDao.upgradeLevels(Level.SILVER, 0, MIN_RECCOMEND_FOR_GOLD));
+        upgraded.addAll(userDao.upgradeLevels(Level.BASIC, MIN_LOGCOUNT_FOR_SILVER, 0));
+        for(User user : upgraded){
+            sendUpgradeEmail(user);
+        }
+    }
+
+    // id 공간을 partitionSize 크기의 구간으로 나눠 구간마다 별도의 트랜잭션으로 병렬 처리한다.
+    // 한 구간이 실패하면 그 구간만 롤백되고, 모든 구간이 끝난 뒤 첫 번째 예외를 다시 던진다.
+    public List<PartitionResult> upgradeLevelsInParallel(int partitionSize){
+        if(partitionSize <= 0){
+            throw new IllegalArgumentException("partitionSize는 1 이상이어야 합니다: " + partitionSize);
+        }
+        if(this.executor != null) return upgradeLevelsInParallel(partitionSize, this.executor);
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, new UpgradeThreadFactory());
+        try{
+            return upgradeLevelsInParallel(partitionSize, pool);
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    private List<PartitionResult> upgradeLevelsInParallel(int partitionSize, Executor executor){
+        List<CompletableFuture<PartitionResult>> futures = new ArrayList<>();
+        String fromId = null;
+        for(String toId : userDao.getIdBoundaries(partitionSize)){
+            futures.add(submitPartition(fromId, toId, executor));
+            fromId = toId;
+        }
+        futures.add(submitPartition(fromId, null, executor));
+
+        List<PartitionResult> results = new ArrayList<>();
+        RuntimeException failure = null;
+        for(CompletableFuture<PartitionResult> future : futures){
+            try{
+                results.add(future.join());
+            }catch (CompletionException e){
+                if(failure == null){
+                    failure = (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+                }
             }
         }
+        if(failure != null) throw failure;
+        return results;
     }
 
+    private CompletableFuture<PartitionResult> submitPartition(final String fromId, final String toId, Executor executor){
+        return CompletableFuture.supplyAsync(() -> upgradePartition(fromId, toId), executor);
+    }
+
+    private PartitionResult upgradePartition(String fromId, String toId){
+        TransactionStatus status = this.transactionManager.getTransaction(new DefaultTransactionDefinition());
+        try{
+            List<User> users = userDao.getAllBetween(fromId, toId);
+            int upgraded = upgradeUsers(users);
+            this.transactionManager.commit(status);
+            return new PartitionResult(fromId, toId, users.size(), upgraded);
+        }catch (RuntimeException e){
+            this.transactionManager.rollback(status);
+            throw e;
+        }
+    }
 
     private boolean canUpgradeLevel(User user){
         Level currentLevel = user.getLevel();
@@ -61,10 +217,44 @@ public class UserServiceImpl implements UserService{
         }
     }
 
+    // 업그레이드된 사용자를 모아 두었다가 updateBatchSize 단위로 한 번에 반영한다.
+    private int upgradeUsers(List<User> users){
+        List<User> upgraded = new ArrayList<>();
+        int count = 0;
+        for(User user : users){
+            if(canUpgradeLevel(user)){
+                upgradeLevel(user);
+                upgraded.add(user);
+                count++;
+                if(upgraded.size() >= updateBatchSize) flushUpgraded(upgraded);
+            }
+        }
+        flushUpgraded(upgraded);
+        return count;
+    }
+
+    private void flushUpgraded(List<User> upgraded){
+        if(upgraded.isEmpty()) return;
+        userDao.updateLevels(upgraded);
+        for(User user : upgraded){
+            sendUpgradeEmail(user);
+        }
+        upgraded.clear();
+    }
+
     protected void upgradeLevel(User user){
         user.upgradeLevel();
-        userDao.update(user);
-        sendUpgradeEmail(user);
+    }
+
+    // 스레드 덤프에서 구분되도록 이름을 붙이고, 남은 스레드가 JVM 종료를 막지 않게 데몬으로 만든다.
+    private static class UpgradeThreadFactory implements ThreadFactory {
+        private final AtomicInteger sequence = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "user-upgrade-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
     private void sendUpgradeEmail(User user){
@@ -5,6 +5,9 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 import toby.user.domain.User;
 
+import java.util.Collection;
+import java.util.List;
+
 public class UserServiceTx implements UserService{
     UserService userService;
     PlatformTransactionManager transactionManager;
@@ -21,6 +24,18 @@ public class UserServiceTx implements UserService{
         userService.add(user);
     }
 
+    // 일괄 등록은 한 트랜잭션으로 묶어 전부 들어가거나 하나도 들어가지 않게 한다.
+    public void addAll(Collection<User> users){
+        TransactionStatus status = this.transactionManager.getTransaction(new DefaultTransactionDefinition());
+        try{
+            userService.addAll(users);
+            this.transactionManager.commit(status);
+        }catch (RuntimeException e){
+            this.transactionManager.rollback(status);
+            throw e;
+        }
+    }
+
     public void upgradeLevels(){
         TransactionStatus status = this.transactionManager.getTransaction(new DefaultTransactionDefinition());
         try{
@@ -32,4 +47,30 @@ public class UserServiceTx implements UserService{
         }
 
     }
+
+    public void upgradeLevelsInDatabase(){
+        TransactionStatus status = this.transactionManager.getTransaction(new DefaultTransactionDefinition());
+        try{
+            userService.upgradeLevelsInDatabase();
+            this.transactionManager.commit(status);
+        }catch (RuntimeException e){
+            this.transactionManager.rollback(status);
+            throw e;
+        }
+    }
+
+    // 페이지마다 UserServiceImpl이 직접 트랜잭션을 나눠 커밋하므로 그대로 위임한다.
+    public void upgradeLevelsByPage(int pageSize){
+        userService.upgradeLevelsByPage(pageSize);
+    }
+
+    // 묶음마다 UserServiceImpl이 직접 트랜잭션을 나눠 커밋하므로 그대로 위임한다.
+    public void upgradeLevelsIncrementally(int batchSize){
+        userService.upgradeLevelsIncrementally(batchSize);
+    }
+
+    // 구간마다 UserServiceImpl이 별도의 트랜잭션을 사용한다.
+    public List<PartitionResult> upgradeLevelsInParallel(int partitionSize){
+        return userService.upgradeLevelsInParallel(partitionSize);
+    }
 }
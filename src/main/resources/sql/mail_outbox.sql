@@ -0,0 +1,15 @@
+-- 업그레이드 안내 메일 outbox. users 갱신과 같은 트랜잭션에서 기록되고 MailOutboxRelay가 발송한다.
+create table mail_outbox (
+    id               bigint       not null auto_increment primary key,
+    recipient        varchar(100) not null,
+    sender           varchar(100),
+    subject          varchar(200),
+    text             varchar(2000),
+    attempts         int          not null default 0,
+    next_attempt_at  timestamp    not null default current_timestamp,
+    created_at       timestamp    not null default current_timestamp,
+    delivered_at     timestamp    null
+);
+
+-- 발송할 차례가 된 메일을 next_attempt_at 순서로 읽는다.
+create index mail_outbox_pending on mail_outbox (delivered_at, next_attempt_at, id);
@@ -0,0 +1,8 @@
+-- 레벨별 통계와 업그레이드 후보 조회용 인덱스.
+-- getCountsByLevel()의 group by level은 users_level_login만 읽고 끝난다(index-only scan).
+-- BASIC -> SILVER 조건(login)과 SILVER -> GOLD 조건(recommend)은 각각 해당 인덱스의 범위 조회가 된다.
+create index users_level_login on users (level, login);
+create index users_level_recommend on users (level, recommend);
+-- getUpgradeCandidates()의 "where level = ? ... order by id limit ?"는 이 인덱스를 id 순서로 따라가며
+-- login, recommend 조건을 거르고 limit 건에서 멈춘다. 위의 두 인덱스로는 범위를 읽은 뒤 filesort가 필요하다.
+create index users_level_id on users (level, id);
@@ -0,0 +1,207 @@
+package toby.test;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+import toby.user.service.AsyncMailSender;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AsyncMailSenderTest {
+
+    @Test
+    public void flushOnShutdown() throws Exception {
+        BatchRecordingMailSender target = new BatchRecordingMailSender();
+        AsyncMailSender asyncMailSender = new AsyncMailSender(target, 100);
+        asyncMailSender.setMaxBatchSize(10);
+        asyncMailSender.init();
+
+        for(int i = 0; i < 25; i++){
+            asyncMailSender.send(message("user" + i + "@email.com"));
+        }
+        asyncMailSender.shutdown();
+
+        assertThat(target.getRecipients().size()).isEqualTo(25);
+        assertThat(asyncMailSender.getQueued()).isEqualTo(25L);
+        assertThat(asyncMailSender.getSent()).isEqualTo(25L);
+        assertThat(asyncMailSender.getFailed()).isEqualTo(0L);
+    }
+
+    @Test
+    public void countFailedBatches() throws Exception {
+        AsyncMailSender asyncMailSender = new AsyncMailSender(new FailingMailSender(), 10);
+        asyncMailSender.init();
+
+        asyncMailSender.send(message("user@email.com"));
+        asyncMailSender.shutdown();
+
+        assertThat(asyncMailSender.getSent()).isEqualTo(0L);
+        assertThat(asyncMailSender.getFailed()).isEqualTo(1L);
+    }
+
+    // init() 전에 쌓인 메일은 maxBatchSize 단위로 묶여 나간다.
+    @Test
+    public void splitIntoMaxBatchSize() throws Exception {
+        BatchRecordingMailSender target = new BatchRecordingMailSender();
+        AsyncMailSender asyncMailSender = new AsyncMailSender(target, 100);
+        asyncMailSender.setMaxBatchSize(10);
+
+        for(int i = 0; i < 25; i++){
+            asyncMailSender.send(message("user" + i + "@email.com"));
+        }
+        asyncMailSender.init();
+        asyncMailSender.shutdown();
+
+        assertThat(target.getBatchSizes()).containsExactly(10, 10, 5);
+    }
+
+    @Test
+    public void dropWhenQueueIsFull() throws Exception {
+        BatchRecordingMailSender target = new BatchRecordingMailSender();
+        AsyncMailSender asyncMailSender = new AsyncMailSender(target, 2);
+        asyncMailSender.setBackpressure(AsyncMailSender.Backpressure.DROP);
+
+        for(int i = 0; i < 3; i++){
+            asyncMailSender.send(message("user" + i + "@email.com"));
+        }
+        assertThat(asyncMailSender.getDropped()).isEqualTo(1L);
+
+        asyncMailSender.init();
+        asyncMailSender.shutdown();
+        assertThat(target.getRecipients()).containsExactly("user0@email.com", "user1@email.com");
+    }
+
+    // 큐가 가득 차면 호출한 스레드가 직접 보낸다.
+    @Test
+    public void spillWhenQueueIsFull() throws Exception {
+        BatchRecordingMailSender target = new BatchRecordingMailSender();
+        AsyncMailSender asyncMailSender = new AsyncMailSender(target, 1);
+        asyncMailSender.setBackpressure(AsyncMailSender.Backpressure.SPILL);
+
+        asyncMailSender.send(message("queued@email.com"));
+        asyncMailSender.send(message("spilled@email.com"));
+        assertThat(target.getRecipients()).containsExactly("spilled@email.com");
+        assertThat(asyncMailSender.getQueueSize()).isEqualTo(1);
+
+        asyncMailSender.init();
+        asyncMailSender.shutdown();
+        assertThat(target.getRecipients()).containsExactly("spilled@email.com", "queued@email.com");
+        assertThat(asyncMailSender.getSent()).isEqualTo(2L);
+    }
+
+    // 큐가 가득 차면 발송 스레드가 자리를 비울 때까지 호출한 스레드가 기다린다.
+    @Test
+    public void blockWhenQueueIsFull() throws Exception {
+        GatedMailSender target = new GatedMailSender();
+        AsyncMailSender asyncMailSender = new AsyncMailSender(target, 1);
+        asyncMailSender.init();
+
+        asyncMailSender.send(message("user0@email.com"));
+        assertThat(target.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        asyncMailSender.send(message("user1@email.com"));
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> asyncMailSender.send(message("user2@email.com")));
+        Thread.sleep(100);
+        assertThat(blocked.isDone()).isFalse();
+
+        target.gate.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        asyncMailSender.shutdown();
+        assertThat(target.getRecipients()).containsExactly("user0@email.com", "user1@email.com", "user2@email.com");
+    }
+
+    // 발송 스레드 없이 큐에서 기다리던 send()는 shutdown()을 막지 않고 거부된다.
+    @Test
+    public void shutdownWhileSendIsBlocked() throws Exception {
+        BatchRecordingMailSender target = new BatchRecordingMailSender();
+        AsyncMailSender asyncMailSender = new AsyncMailSender(target, 1);
+
+        asyncMailSender.send(message("user0@email.com"));
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> asyncMailSender.send(message("user1@email.com")));
+        Thread.sleep(100);
+        assertThat(blocked.isDone()).isFalse();
+
+        asyncMailSender.shutdown();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> blocked.get(5, TimeUnit.SECONDS));
+        assertThat(e.getCause() instanceof IllegalStateException).isTrue();
+        assertThat(target.getRecipients()).containsExactly("user0@email.com");
+    }
+
+    @Test
+    public void rejectSendAfterShutdown() throws Exception {
+        AsyncMailSender asyncMailSender = new AsyncMailSender(new BatchRecordingMailSender(), 10);
+        asyncMailSender.init();
+        asyncMailSender.shutdown();
+
+        assertThrows(IllegalStateException.class, () -> asyncMailSender.send(message("user@email.com")));
+        assertThrows(IllegalStateException.class, asyncMailSender::init);
+    }
+
+    private SimpleMailMessage message(String to){
+        SimpleMailMessage mailMessage = new SimpleMailMessage();
+        mailMessage.setTo(to);
+        return mailMessage;
+    }
+
+    static class BatchRecordingMailSender implements MailSender {
+        private List<String> recipients = Collections.synchronizedList(new ArrayList<String>());
+        private List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+        public List<String> getRecipients() {
+            return recipients;
+        }
+
+        public List<Integer> getBatchSizes() {
+            return batchSizes;
+        }
+
+        @Override
+        public void send(SimpleMailMessage mailMessage) throws MailException {
+            recipients.add(mailMessage.getTo()[0]);
+        }
+
+        @Override
+        public void send(SimpleMailMessage... mailMessages) throws MailException {
+            batchSizes.add(mailMessages.length);
+            for(SimpleMailMessage mailMessage : mailMessages) send(mailMessage);
+        }
+    }
+
+    // 첫 묶음을 받으면 entered를 열고 gate가 열릴 때까지 돌려주지 않는다.
+    static class GatedMailSender extends BatchRecordingMailSender {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public void send(SimpleMailMessage... mailMessages) throws MailException {
+            entered.countDown();
+            try{
+                gate.await();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            super.send(mailMessages);
+        }
+    }
+
+    static class FailingMailSender implements MailSender {
+        @Override
+        public void send(SimpleMailMessage mailMessage) throws MailException {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        public void send(SimpleMailMessage... mailMessages) throws MailException {
+            throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package toby.test;
+
+import org.junit.jupiter.api.Test;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+import toby.user.service.AsyncUserServiceImpl;
+import toby.user.service.PartitionResult;
+import toby.user.service.UserService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AsyncUserServiceTest {
+
+    @Test
+    public void limitConcurrency() throws Exception {
+        SlowUserService userService = new SlowUserService();
+        AsyncUserServiceImpl asyncUserService = new AsyncUserServiceImpl();
+        asyncUserService.setUserService(userService);
+        asyncUserService.setMaxConcurrency(3);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for(int i = 0; i < 50; i++){
+            futures.add(asyncUserService.add(new User("user" + i, "name", "p1", Level.BASIC, 0, 0, "user@email.com")));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        asyncUserService.shutdown();
+
+        assertThat(userService.added.get()).isEqualTo(50);
+        assertThat(userService.maxActive.get()).isLessThanOrEqualTo(3L);
+        assertThat(asyncUserService.getActiveCount()).isEqualTo(0);
+    }
+
+    // 실행 중에 한도를 바꿔도 실행 중인 호출 수는 그대로 센다.
+    @Test
+    public void countActiveAcrossConcurrencyChange() throws Exception {
+        GatedUserService userService = new GatedUserService();
+        AsyncUserServiceImpl asyncUserService = new AsyncUserServiceImpl();
+        asyncUserService.setUserService(userService);
+        asyncUserService.setMaxConcurrency(2);
+
+        CompletableFuture<Void> future = asyncUserService.add(new User("user0", "name", "p1", Level.BASIC, 0, 0, "user@email.com"));
+        assertThat(userService.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        asyncUserService.setMaxConcurrency(5);
+        assertThat(asyncUserService.getActiveCount()).isEqualTo(1);
+
+        userService.gate.countDown();
+        future.get(5, TimeUnit.SECONDS);
+        asyncUserService.shutdown();
+        assertThat(asyncUserService.getActiveCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void rejectNonPositiveMaxConcurrency() {
+        AsyncUserServiceImpl asyncUserService = new AsyncUserServiceImpl();
+
+        assertThrows(IllegalArgumentException.class, () -> asyncUserService.setMaxConcurrency(0));
+        assertThrows(IllegalArgumentException.class, () -> asyncUserService.setMaxConcurrency(-1));
+    }
+
+    @Test
+    public void completeExceptionally() throws Exception {
+        AsyncUserServiceImpl asyncUserService = new AsyncUserServiceImpl();
+        asyncUserService.setUserService(new SlowUserService());
+
+        CompletableFuture<Void> future = asyncUserService.upgradeLevels();
+        asyncUserService.shutdown();
+
+        assertThat(future).isCompletedExceptionally();
+    }
+
+    static class SlowUserService implements UserService {
+        final AtomicInteger added = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        final LongAccumulator maxActive = new LongAccumulator(Math::max, 0);
+
+        public void add(User user) {
+            maxActive.accumulate(active.incrementAndGet());
+            try{
+                Thread.sleep(5);
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }finally{
+                active.decrementAndGet();
+            }
+            added.incrementAndGet();
+        }
+
+        public void addAll(Collection<User> users) {
+            for(User user : users) add(user);
+        }
+
+        public void upgradeLevels() {
+            throw new IllegalStateException();
+        }
+
+        public void upgradeLevelsByPage(int pageSize) { throw new UnsupportedOperationException(); }
+        public void upgradeLevelsIncrementally(int batchSize) { throw new UnsupportedOperationException(); }
+        public void upgradeLevelsInDatabase() { throw new UnsupportedOperationException(); }
+        public List<PartitionResult> upgradeLevelsInParallel(int partitionSize) { throw new UnsupportedOperationException(); }
+    }
+
+    // add()에 들어오면 entered를 열고 gate가 열릴 때까지 돌려주지 않는다.
+    static class GatedUserService extends SlowUserService {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public void add(User user) {
+            entered.countDown();
+            try{
+                gate.await();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            super.add(user);
+        }
+    }
+}
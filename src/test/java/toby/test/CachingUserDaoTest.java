@@ -0,0 +1,133 @@
+package toby.test;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import toby.user.dao.CachingUserDao;
+import toby.user.dao.ColumnarUserDao;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CachingUserDaoTest {
+    private CountingUserDao target;
+
+    @BeforeEach
+    public void setUp(){
+        target = new CountingUserDao();
+        target.addAll(Arrays.asList(
+                new User("a", "에이", "p", Level.BASIC, 1, 0, "a@email.com"),
+                new User("b", "비", "p", Level.BASIC, 1, 0, "b@email.com"),
+                new User("c", "씨", "p", Level.BASIC, 1, 0, "c@email.com")));
+    }
+
+    @Test
+    public void rejectNonPositiveMaxSize(){
+        assertThrows(IllegalArgumentException.class, () -> new CachingUserDao(target, 0, CachingUserDao.EvictionPolicy.LFU));
+        assertThrows(IllegalArgumentException.class, () -> new CachingUserDao(target, -1, CachingUserDao.EvictionPolicy.LRU));
+    }
+
+    @Test
+    public void hitAfterMiss(){
+        CachingUserDao dao = new CachingUserDao(target, 10, CachingUserDao.EvictionPolicy.LRU);
+
+        dao.get("a").setName("바뀜");
+        assertThat(dao.get("a").getName()).isEqualTo("에이");
+
+        assertThat(target.gets).isEqualTo(1);
+        assertThat(dao.getHits()).isEqualTo(1L);
+        assertThat(dao.getMisses()).isEqualTo(1L);
+    }
+
+    // 가장 오래 쓰이지 않은 b가 밀려난다.
+    @Test
+    public void evictLeastRecentlyUsed(){
+        CachingUserDao dao = new CachingUserDao(target, 2, CachingUserDao.EvictionPolicy.LRU);
+        dao.get("a");
+        dao.get("b");
+        dao.get("a");
+        dao.get("c");
+
+        assertThat(dao.getEvictions()).isEqualTo(1L);
+        int gets = target.gets;
+        dao.get("a");
+        assertThat(target.gets).isEqualTo(gets);
+        dao.get("b");
+        assertThat(target.gets).isEqualTo(gets + 1);
+    }
+
+    // 두 번 읽은 a는 남고, 한 번만 읽은 b가 밀려난다.
+    @Test
+    public void evictLeastFrequentlyUsed(){
+        CachingUserDao dao = new CachingUserDao(target, 2, CachingUserDao.EvictionPolicy.LFU);
+        dao.get("a");
+        dao.get("a");
+        dao.get("b");
+        dao.get("c");
+
+        assertThat(dao.getEvictions()).isEqualTo(1L);
+        int gets = target.gets;
+        dao.get("a");
+        dao.get("c");
+        assertThat(target.gets).isEqualTo(gets);
+        dao.get("b");
+        assertThat(target.gets).isEqualTo(gets + 1);
+    }
+
+    @Test
+    public void expireAfterTtl() throws InterruptedException {
+        CachingUserDao dao = new CachingUserDao(target, 10, CachingUserDao.EvictionPolicy.LRU);
+        dao.setTtlMillis(1);
+        dao.get("a");
+        Thread.sleep(10);
+        dao.get("a");
+
+        assertThat(target.gets).isEqualTo(2);
+    }
+
+    @Test
+    public void invalidateOnWrite(){
+        CachingUserDao dao = new CachingUserDao(target, 10, CachingUserDao.EvictionPolicy.LRU);
+        User user = dao.get("a");
+        user.setName("바뀜");
+        dao.update(user);
+
+        assertThat(dao.get("a").getName()).isEqualTo("바뀜");
+        assertThat(target.gets).isEqualTo(2);
+    }
+
+    // 커밋 전에 다른 스레드가 캐시에 넣은 값은 트랜잭션이 끝날 때 다시 무효화된다.
+    @Test
+    public void invalidateAgainAfterCommit() throws Exception {
+        CachingUserDao dao = new CachingUserDao(target, 10, CachingUserDao.EvictionPolicy.LRU);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(TestDatabase.create("caching_user_dao"));
+
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        User user = dao.get("a");
+        user.setName("바뀜");
+        dao.update(user);
+        CompletableFuture.runAsync(() -> dao.get("a")).get();
+        assertThat(dao.getSize()).isEqualTo(1);
+        transactionManager.commit(status);
+
+        assertThat(dao.getSize()).isEqualTo(0);
+    }
+
+    static class CountingUserDao extends ColumnarUserDao {
+        volatile int gets;
+
+        @Override
+        public User get(String id) {
+            gets++;
+            return super.get(id);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package toby.test;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import toby.user.dao.ColumnarUserDao;
+import toby.user.dao.UserDao;
+
+// UserDaoJdbc와 같은 계약 테스트를 ColumnarUserDao에 대해 실행한다.
+public class ColumnarUserDaoTest extends UserDaoTest {
+    @Override
+    protected UserDao createDao() {
+        return new ColumnarUserDao();
+    }
+
+    @Override
+    protected PlatformTransactionManager createTransactionManager() {
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+package toby.test;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import toby.user.dao.InstrumentedDataSource;
+import toby.user.dao.JdbcMetrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class InstrumentedDataSourceTest {
+    private JdbcMetrics metrics;
+    private InstrumentedDataSource dataSource;
+
+    @BeforeEach
+    public void setUp(){
+        metrics = new JdbcMetrics();
+        dataSource = new InstrumentedDataSource(TestDatabase.create("instrumented_datasource"), metrics);
+    }
+
+    @Test
+    public void recordConnectionAndStatements() throws SQLException {
+        Connection c = dataSource.getConnection();
+        assertThat(metrics.getActiveConnections()).isEqualTo(1L);
+
+        PreparedStatement ps = c.prepareStatement("select count(*) from users");
+        ps.executeQuery().close();
+        ps.executeQuery().close();
+        ps.close();
+        Statement statement = c.createStatement();
+        statement.executeUpdate("delete from users");
+        statement.close();
+        c.close();
+        c.close();
+
+        assertThat(metrics.getConnectionsAcquired()).isEqualTo(1L);
+        assertThat(metrics.getActiveConnections()).isEqualTo(0L);
+        assertThat(metrics.getAcquisition().getCount()).isEqualTo(1L);
+        assertThat(metrics.getHold().getCount()).isEqualTo(1L);
+        assertThat(metrics.getStatement("select count(*) from users").getCount()).isEqualTo(2L);
+        assertThat(metrics.getStatement("delete from users").getCount()).isEqualTo(1L);
+        assertThat(metrics.getStatementCount()).isEqualTo(3L);
+    }
+
+    @Test
+    public void recordAcquisitionFailure(){
+        InstrumentedDataSource failing = new InstrumentedDataSource(new FailingDataSource(), metrics);
+
+        assertThrows(SQLException.class, failing::getConnection);
+        assertThat(metrics.getAcquisitionFailures()).isEqualTo(1L);
+        assertThat(metrics.getConnectionsAcquired()).isEqualTo(0L);
+        assertThat(metrics.getActiveConnections()).isEqualTo(0L);
+    }
+
+    // maxStatements 종류를 넘는 SQL은 (other) 하나로 모은다.
+    @Test
+    public void groupStatementsBeyondMax() throws SQLException {
+        metrics.setMaxStatements(1);
+        Connection c = dataSource.getConnection();
+        Statement statement = c.createStatement();
+        statement.executeQuery("select 1").close();
+        statement.executeQuery("select 2").close();
+        statement.close();
+        c.close();
+
+        assertThat(metrics.getStatement("select 1").getCount()).isEqualTo(1L);
+        assertThat(metrics.getStatement("select 2")).isNull();
+        assertThat(metrics.getStatement("(other)").getCount()).isEqualTo(1L);
+    }
+
+    // 대여 중인 커넥션 수는 초기화하지 않는다.
+    @Test
+    public void resetKeepsActiveConnections() throws SQLException {
+        Connection c = dataSource.getConnection();
+        metrics.reset();
+
+        assertThat(metrics.getConnectionsAcquired()).isEqualTo(0L);
+        assertThat(metrics.getAcquisition().getCount()).isEqualTo(0L);
+        assertThat(metrics.getActiveConnections()).isEqualTo(1L);
+        c.close();
+        assertThat(metrics.getActiveConnections()).isEqualTo(0L);
+    }
+
+    static class FailingDataSource extends AbstractDataSource {
+        @Override
+        public Connection getConnection() throws SQLException {
+            throw new SQLException("연결할 수 없습니다.");
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package toby.test;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import toby.user.dao.JdbcContext;
+import toby.user.dao.LatencyHistogram;
+import toby.user.dao.PooledDataSource;
+import toby.user.dao.StatementCache;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JdbcContextTest {
+    private static final String INSERT = "insert into users(id, name, password) values('gyumee', '박성철', 'springno1')";
+
+    private DataSource dataSource;
+    private JdbcContext jdbcContext;
+
+    @BeforeEach
+    public void setUp(){
+        dataSource = TestDatabase.create("jdbc_context");
+        jdbcContext = new JdbcContext();
+        jdbcContext.setDataSource(dataSource);
+        jdbcContext.setTimingSampleRate(1);
+    }
+
+    @Test
+    public void recordTimingPerSql() throws SQLException {
+        jdbcContext.executeSql(INSERT);
+        jdbcContext.executeSql("delete from users");
+
+        assertThat(jdbcContext.getSqlTimings()).containsOnlyKeys(INSERT, "delete from users");
+        assertThat(jdbcContext.getSqlTimings().get(INSERT).getCount()).isEqualTo(1L);
+    }
+
+    // executeUpdate()가 실패한 문장도 집계에서 빠지지 않는다.
+    @Test
+    public void recordTimingOfFailedStatement() throws SQLException {
+        jdbcContext.executeSql(INSERT);
+        assertThrows(SQLException.class, () -> jdbcContext.executeSql(INSERT));
+
+        assertThat(jdbcContext.getSqlTimings().get(INSERT).getCount()).isEqualTo(2L);
+    }
+
+    // 커넥션을 얻는 데 걸린 시간은 문장 실행 시간에 넣지 않는다.
+    @Test
+    public void excludeConnectionAcquisition() throws SQLException {
+        jdbcContext.setDataSource(new SlowDataSource(dataSource, 200));
+        jdbcContext.executeSql(INSERT);
+
+        LatencyHistogram timing = jdbcContext.getSqlTimings().get(INSERT);
+        assertThat(timing.getCount()).isEqualTo(1L);
+        assertThat(timing.getMax()).isLessThan(TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    // 풀에서 같은 물리 커넥션을 다시 빌리면 캐시해 둔 PreparedStatement를 다시 쓴다.
+    @Test
+    public void reuseCachedStatement() throws SQLException {
+        PooledDataSource pool = singleConnectionPool();
+        jdbcContext.setDataSource(pool);
+        jdbcContext.setStatementCacheSize(10);
+
+        jdbcContext.executeSql("delete from users");
+        jdbcContext.executeSql("delete from users");
+        pool.close();
+
+        assertThat(jdbcContext.getStatementCacheMisses()).isEqualTo(1L);
+        assertThat(jdbcContext.getStatementCacheHits()).isEqualTo(1L);
+    }
+
+    // 풀이 닫혀 물리 커넥션이 바뀌면 예전 커넥션의 문장을 쓰지 않고 새로 준비한다.
+    @Test
+    public void dropCacheOfClosedConnection() throws SQLException {
+        jdbcContext.setStatementCacheSize(10);
+        PooledDataSource pool = singleConnectionPool();
+        jdbcContext.setDataSource(pool);
+        jdbcContext.executeSql("delete from users");
+        pool.close();
+
+        pool = singleConnectionPool();
+        jdbcContext.setDataSource(pool);
+        jdbcContext.executeSql("delete from users");
+        pool.close();
+
+        assertThat(jdbcContext.getStatementCacheMisses()).isEqualTo(2L);
+        assertThat(jdbcContext.getStatementCacheHits()).isEqualTo(0L);
+    }
+
+    // 가장 오래 쓰지 않은 문장을 닫으며 밀어내고, 닫힌 문장은 돌려주지 않는다.
+    @Test
+    public void evictLeastRecentlyUsedStatement() throws SQLException {
+        try(Connection c = dataSource.getConnection()){
+            StatementCache cache = new StatementCache(1);
+            PreparedStatement first = cache.prepare(c, "select 1");
+            PreparedStatement second = cache.prepare(c, "select 2");
+
+            assertThat(first.isClosed()).isTrue();
+            assertThat(cache.get("select 1")).isNull();
+            assertThat(cache.get("select 2")).isSameAs(second);
+
+            second.close();
+            assertThat(cache.get("select 2")).isNull();
+            assertThat(cache.size()).isEqualTo(0);
+        }
+    }
+
+    private PooledDataSource singleConnectionPool() {
+        PooledDataSource pool = new PooledDataSource(dataSource);
+        pool.setMinSize(0);
+        pool.setMaxSize(1);
+        return pool;
+    }
+
+    // getConnection()마다 delayMillis만큼 기다린다.
+    static class SlowDataSource extends AbstractDataSource {
+        final DataSource target;
+        final long delayMillis;
+
+        SlowDataSource(DataSource target, long delayMillis) {
+            this.target = target;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            try{
+                Thread.sleep(delayMillis);
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            return target.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+    }
+}
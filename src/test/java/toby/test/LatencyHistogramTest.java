@@ -0,0 +1,74 @@
+package toby.test;
+
+import org.junit.jupiter.api.Test;
+import toby.user.dao.LatencyHistogram;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram(){
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.getCount()).isEqualTo(0L);
+        assertThat(histogram.getPercentile(99)).isEqualTo(0L);
+        assertThat(histogram.getMean()).isEqualTo(0.0);
+    }
+
+    // 32 미만의 값은 값마다 버킷이 하나씩이라 정확하다.
+    @Test
+    public void exactBelowSubBucketCount(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 0; i < 32; i++) histogram.record(i);
+
+        assertThat(histogram.getPercentile(0)).isEqualTo(0L);
+        assertThat(histogram.getPercentile(50)).isEqualTo(15L);
+        assertThat(histogram.getPercentile(100)).isEqualTo(31L);
+    }
+
+    // 그 위로는 해당 값이 들어간 버킷의 상한을 돌려주며, 상대 오차는 1/32 안이다.
+    @Test
+    public void percentileWithinBucketError(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 1; i <= 1000; i++) histogram.record(i);
+
+        assertThat(histogram.getPercentile(50)).isEqualTo(503L);
+        assertThat(histogram.getPercentile(99)).isEqualTo(991L);
+        assertThat(histogram.getPercentile(100)).isEqualTo(1000L);
+        assertThat(histogram.getMean()).isEqualTo(500.5);
+        assertThat(histogram.getMax()).isEqualTo(1000L);
+    }
+
+    // 버킷 상한이 최댓값보다 크면 최댓값을 돌려준다.
+    @Test
+    public void percentileCappedAtMax(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 0; i < 99; i++) histogram.record(10);
+        histogram.record(1000000);
+
+        assertThat(histogram.getPercentile(99)).isEqualTo(10L);
+        assertThat(histogram.getPercentile(99.5)).isEqualTo(1000000L);
+    }
+
+    @Test
+    public void clampNegativeAndKeepLongMax(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertThat(histogram.getPercentile(50)).isEqualTo(0L);
+        assertThat(histogram.getPercentile(100)).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void reset(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.reset();
+
+        assertThat(histogram.getCount()).isEqualTo(0L);
+        assertThat(histogram.getMax()).isEqualTo(0L);
+        assertThat(histogram.getPercentile(50)).isEqualTo(0L);
+    }
+}
@@ -0,0 +1,195 @@
+package toby.test;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+import toby.user.dao.MailOutboxDaoJdbc;
+import toby.user.domain.OutboxMail;
+import toby.user.service.MailOutboxRelay;
+import toby.user.service.OutboxMailSender;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// OutboxMailSender가 기록한 메일을 MailOutboxRelay가 H2의 outbox에서 읽어 보내는 과정을 확인한다.
+public class MailOutboxTest {
+    private DataSource dataSource;
+    private MailOutboxDaoJdbc mailOutboxDao;
+
+    @BeforeEach
+    public void setUp(){
+        dataSource = TestDatabase.create("mail_outbox");
+        TestDatabase.createMailOutboxSchema(dataSource);
+        mailOutboxDao = new MailOutboxDaoJdbc();
+        mailOutboxDao.setDataSource(dataSource);
+    }
+
+    @Test
+    public void recordEachRecipient(){
+        OutboxMailSender outboxMailSender = new OutboxMailSender();
+        outboxMailSender.setMailOutboxDao(mailOutboxDao);
+
+        SimpleMailMessage message = message();
+        message.setTo("gyumee@email.com", "bumjin@email.com");
+        SimpleMailMessage withoutAddress = message();
+        withoutAddress.setTo((String) null);
+        outboxMailSender.send(message, withoutAddress, new SimpleMailMessage());
+
+        assertThat(mailOutboxDao.getUndeliveredCount()).isEqualTo(2);
+    }
+
+    // 읽은 메일은 lease 동안 다시 읽히지 않고, 발송한 메일은 더 이상 읽히지 않는다.
+    @Test
+    public void claimAndDeliver(){
+        addMails(2);
+
+        Date now = new Date(System.currentTimeMillis() + 1000);
+        List<OutboxMail> mails = mailOutboxDao.getUndelivered(10, 5, now);
+        assertThat(mails.size()).isEqualTo(2);
+
+        mailOutboxDao.claim(Collections.singletonList(mails.get(0).getId()), new Date(now.getTime() + 60000));
+        assertThat(mailOutboxDao.getUndelivered(10, 5, now).size()).isEqualTo(1);
+
+        mailOutboxDao.markDelivered(Collections.singletonList(mails.get(1).getId()));
+        assertThat(mailOutboxDao.getUndelivered(10, 5, now).size()).isEqualTo(0);
+        assertThat(mailOutboxDao.getUndeliveredCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void relayAll(){
+        addMails(3);
+        RecordingMailSender mailSender = new RecordingMailSender();
+        MailOutboxRelay relay = relay(mailSender);
+        relay.setBatchSize(2);
+
+        relay.relayAll();
+
+        assertThat(mailSender.getRecipients().size()).isEqualTo(3);
+        assertThat(mailOutboxDao.getUndeliveredCount()).isEqualTo(0);
+    }
+
+    // 실패한 묶음은 backoff가 지나기 전에는 다시 보내지 않는다.
+    @Test
+    public void waitForBackoffAfterFailure(){
+        addMails(1);
+        FailingMailSender mailSender = new FailingMailSender();
+        MailOutboxRelay relay = relay(mailSender);
+        relay.setBatchSize(1);
+        relay.setRetryBackoffMillis(60000);
+
+        relay.relayAll();
+        assertThat(relay.relay()).isEqualTo(0);
+
+        assertThat(mailSender.getAttempts()).isEqualTo(1);
+        assertThat(mailOutboxDao.getUndeliveredCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void stopAfterMaxAttempts(){
+        addMails(1);
+        FailingMailSender mailSender = new FailingMailSender();
+        MailOutboxRelay relay = relay(mailSender);
+        relay.setBatchSize(1);
+        relay.setMaxAttempts(3);
+        relay.setRetryBackoffMillis(0);
+
+        relay.relayAll();
+
+        assertThat(mailSender.getAttempts()).isEqualTo(3);
+        assertThat(relay.relay()).isEqualTo(0);
+        assertThat(mailOutboxDao.getUndeliveredCount()).isEqualTo(1);
+    }
+
+    // 시도를 다 쓴 메일은 바로 조회되고, 지우면 outbox에서 빠진다. 아직 시도가 남은 메일은 건드리지 않는다.
+    @Test
+    public void listAndPurgeExhausted(){
+        addMails(2);
+        FailingMailSender mailSender = new FailingMailSender();
+        MailOutboxRelay relay = relay(mailSender);
+        relay.setBatchSize(1);
+        relay.setMaxAttempts(2);
+        relay.setRetryBackoffMillis(0);
+
+        relay.relay();
+        assertThat(relay.getExhaustedCount()).isEqualTo(0);
+        relay.relayAll();
+
+        assertThat(relay.getExhaustedCount()).isEqualTo(2);
+        List<OutboxMail> exhausted = relay.getExhausted(10);
+        assertThat(exhausted.size()).isEqualTo(2);
+        assertThat(exhausted.get(0).getAttempts()).isEqualTo(2);
+
+        mailOutboxDao.add(new OutboxMail("user2@email.com", "useradmin@ksug.org", "Upgrade 안내", "text"));
+        assertThat(relay.purgeExhausted()).isEqualTo(2);
+        assertThat(relay.getExhaustedCount()).isEqualTo(0);
+        assertThat(mailOutboxDao.getUndeliveredCount()).isEqualTo(1);
+    }
+
+    private MailOutboxRelay relay(MailSender mailSender){
+        MailOutboxRelay relay = new MailOutboxRelay();
+        relay.setMailOutboxDao(mailOutboxDao);
+        relay.setMailSender(mailSender);
+        relay.setTransactionManager(new DataSourceTransactionManager(dataSource));
+        return relay;
+    }
+
+    private void addMails(int count){
+        for(int i = 0; i < count; i++){
+            mailOutboxDao.add(new OutboxMail("user" + i + "@email.com", "useradmin@ksug.org", "Upgrade 안내", "text"));
+        }
+    }
+
+    private SimpleMailMessage message(){
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom("useradmin@ksug.org");
+        message.setSubject("Upgrade 안내");
+        message.setText("text");
+        return message;
+    }
+
+    static class RecordingMailSender implements MailSender {
+        private final List<String> recipients = new ArrayList<>();
+
+        public List<String> getRecipients() {
+            return recipients;
+        }
+
+        @Override
+        public void send(SimpleMailMessage simpleMessage) throws MailException {
+            recipients.add(simpleMessage.getTo()[0]);
+        }
+
+        @Override
+        public void send(SimpleMailMessage... simpleMessages) throws MailException {
+            for(SimpleMailMessage simpleMessage : simpleMessages) send(simpleMessage);
+        }
+    }
+
+    static class FailingMailSender implements MailSender {
+        private int attempts;
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        @Override
+        public void send(SimpleMailMessage simpleMessage) throws MailException {
+            send(new SimpleMailMessage[]{simpleMessage});
+        }
+
+        @Override
+        public void send(SimpleMailMessage... simpleMessages) throws MailException {
+            attempts++;
+            throw new MailSendException("SMTP 연결 실패");
+        }
+    }
+}
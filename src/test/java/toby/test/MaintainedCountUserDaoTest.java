@@ -0,0 +1,63 @@
+package toby.test;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import toby.user.dao.UserDao;
+import toby.user.dao.UserDaoJdbc;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 건수를 메모리에서 유지하는 UserDaoJdbc가 같은 계약을 지키는지 H2에서 확인한다.
+public class MaintainedCountUserDaoTest extends UserDaoTest {
+    private DataSource dataSource;
+    private UserDaoJdbc userDao;
+
+    @Override
+    protected UserDao createDao() {
+        dataSource = TestDatabase.create("maintained_count");
+        userDao = new UserDaoJdbc();
+        userDao.setDataSource(dataSource);
+        userDao.setCountMode(UserDaoJdbc.CountMode.MAINTAINED);
+        return userDao;
+    }
+
+    @Override
+    protected PlatformTransactionManager createTransactionManager() {
+        return new DataSourceTransactionManager(dataSource);
+    }
+
+    // 롤백된 쓰기는 유지하는 건수에 반영되지 않는다.
+    @Test
+    public void rolledBackWritesDoNotChangeCount() {
+        userDao.deleteAll();
+        userDao.add(new User("gyumee", "박성철", "springno1", Level.BASIC, 1, 0, "gyumee@email.com"));
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        userDao.add(new User("leegw700", "이길원", "springno2", Level.SILVER, 55, 10, "leegw700@email.com"));
+        userDao.deleteAll();
+        transactionManager.rollback(status);
+
+        assertThat(userDao.getCount()).isEqualTo(1);
+    }
+
+    // DAO를 거치지 않은 쓰기는 resyncCount()가 맞춘다.
+    @Test
+    public void resyncCount() {
+        userDao.deleteAll();
+        new JdbcTemplate(dataSource).update(
+                "insert into users(id, name, password, level, login, recommend, email) values ('bumjin', '박범진', 'springno3', 3, 100, 40, null)");
+        assertThat(userDao.getCount()).isEqualTo(0);
+
+        userDao.resyncCount();
+        assertThat(userDao.getCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,55 @@
+package toby.test;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import toby.user.dao.UserDao;
+import toby.user.dao.UserDaoJdbc;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 다중 행 INSERT로 넣는 UserDaoJdbc가 같은 계약을 지키는지 H2에서 확인한다.
+// 묶음 크기를 2로 줄여 3명 이상을 넣는 테스트가 묶음 경계를 거치게 한다.
+public class MultiRowInsertUserDaoTest extends UserDaoTest {
+    private DataSource dataSource;
+    private UserDaoJdbc userDao;
+
+    @Override
+    protected UserDao createDao() {
+        dataSource = TestDatabase.create("multi_row_insert");
+        userDao = new UserDaoJdbc();
+        userDao.setDataSource(dataSource);
+        userDao.setInsertMode(UserDaoJdbc.InsertMode.MULTI_ROW);
+        userDao.setInsertChunkSize(2);
+        return userDao;
+    }
+
+    @Override
+    protected PlatformTransactionManager createTransactionManager() {
+        return new DataSourceTransactionManager(dataSource);
+    }
+
+    // 마지막 묶음이 가득 차지 않아도 빠짐없이 들어간다.
+    @Test
+    public void addAllAcrossChunks() {
+        userDao.deleteAll();
+        List<User> users = new ArrayList<>();
+        for(int i = 0; i < 5; i++){
+            users.add(new User("user" + i, "사용자" + i, "p" + i, Level.BASIC, 1, 0, "user" + i + "@email.com"));
+        }
+        userDao.addAll(users);
+
+        assertThat(userDao.getCount()).isEqualTo(5);
+        List<User> all = userDao.getAll();
+        assertThat(all.get(0).getId()).isEqualTo("user0");
+        assertThat(all.get(4).getEmail()).isEqualTo("user4@email.com");
+        assertThat(all.get(4).getLevel()).isEqualTo(Level.BASIC);
+    }
+
+}
@@ -0,0 +1,174 @@
+package toby.test;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import toby.user.dao.PooledDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PooledDataSourceTest {
+    private CountingDataSource targetDataSource;
+    private PooledDataSource dataSource;
+
+    @BeforeEach
+    public void setUp(){
+        targetDataSource = new CountingDataSource(new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:pooled_datasource;DB_CLOSE_DELAY=-1", "sa", ""));
+        dataSource = new PooledDataSource(targetDataSource);
+        dataSource.setMinSize(0);
+        dataSource.setMaxSize(2);
+    }
+
+    @AfterEach
+    public void tearDown(){
+        dataSource.close();
+    }
+
+    @Test
+    public void reuseReturnedConnection() throws SQLException {
+        Connection c1 = dataSource.getConnection();
+        c1.close();
+        Connection c2 = dataSource.getConnection();
+
+        assertThat(targetDataSource.opened.get()).isEqualTo(1);
+        assertThat(dataSource.getTotalCount()).isEqualTo(1);
+        assertThat(dataSource.getActiveCount()).isEqualTo(1);
+        c2.close();
+        assertThat(dataSource.getIdleCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void waitAtMostMaxWait() throws SQLException {
+        dataSource.setMaxWaitMillis(50);
+        Connection c1 = dataSource.getConnection();
+        Connection c2 = dataSource.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, () -> dataSource.getConnection());
+
+        c1.close();
+        dataSource.getConnection().close();
+        c2.close();
+        assertThat(dataSource.getTotalCount()).isEqualTo(2);
+    }
+
+    // minSize를 채울 때도 maxSize를 넘겨 만들지 않는다.
+    @Test
+    public void fillNoMoreThanMaxSize() throws SQLException {
+        dataSource.setMinSize(5);
+        dataSource.setMaxWaitMillis(50);
+        dataSource.init();
+        assertThat(dataSource.getTotalCount()).isEqualTo(2);
+
+        Connection c1 = dataSource.getConnection();
+        Connection c2 = dataSource.getConnection();
+        assertThrows(SQLTransientConnectionException.class, () -> dataSource.getConnection());
+        assertThat(targetDataSource.opened.get()).isEqualTo(2);
+        c1.close();
+        c2.close();
+    }
+
+    @Test
+    public void rejectUseAfterClose() throws SQLException {
+        Connection c = dataSource.getConnection();
+        c.close();
+        c.close();
+
+        assertThat(c.isClosed()).isTrue();
+        assertThrows(SQLException.class, () -> c.createStatement());
+        assertThat(dataSource.getIdleCount()).isEqualTo(1);
+    }
+
+    // 대여 중에 바꾼 연결 상태는 다음 대여자에게 넘어가지 않는다.
+    @Test
+    public void resetConnectionStateOnReturn() throws SQLException {
+        Connection c1 = dataSource.getConnection();
+        int isolation = c1.getTransactionIsolation();
+        String catalog = c1.getCatalog();
+        c1.setAutoCommit(false);
+        c1.setReadOnly(true);
+        c1.setTransactionIsolation(isolation == Connection.TRANSACTION_SERIALIZABLE
+                ? Connection.TRANSACTION_READ_COMMITTED : Connection.TRANSACTION_SERIALIZABLE);
+        c1.close();
+
+        Connection c2 = dataSource.getConnection();
+        assertThat(c2.getAutoCommit()).isTrue();
+        assertThat(c2.isReadOnly()).isFalse();
+        assertThat(c2.getTransactionIsolation()).isEqualTo(isolation);
+        assertThat(c2.getCatalog()).isEqualTo(catalog);
+        c2.close();
+    }
+
+    // 문장에서 얻은 커넥션을 닫아도 물리 커넥션이 아니라 대여한 커넥션이 반납된다.
+    @Test
+    public void statementReturnsPooledConnection() throws SQLException {
+        Connection c = dataSource.getConnection();
+        Statement statement = c.createStatement();
+        PreparedStatement preparedStatement = c.prepareStatement("select 1");
+        assertThat(statement.getConnection()).isSameAs(c);
+        assertThat(preparedStatement.getConnection()).isSameAs(c);
+
+        preparedStatement.getConnection().close();
+        Connection reused = dataSource.getConnection();
+        assertThat(reused.isValid(1)).isTrue();
+        assertThat(targetDataSource.opened.get()).isEqualTo(1);
+        reused.close();
+    }
+
+    // 방금 반납된 커넥션은 검증하지 않고, validationIdleMillis보다 오래 쉰 커넥션만 검증한다.
+    @Test
+    public void validateOnlyIdleConnections() throws SQLException {
+        dataSource.setValidationIdleMillis(60000);
+        dataSource.getConnection().close();
+        dataSource.getConnection().close();
+        assertThat(targetDataSource.validations.get()).isEqualTo(0);
+
+        dataSource.setValidationIdleMillis(0);
+        dataSource.getConnection().close();
+        assertThat(targetDataSource.validations.get()).isEqualTo(1);
+    }
+
+    // 물리 커넥션을 연 수와 isValid()를 부른 수를 센다.
+    static class CountingDataSource extends AbstractDataSource {
+        final DataSource target;
+        final AtomicInteger opened = new AtomicInteger();
+        final AtomicInteger validations = new AtomicInteger();
+
+        CountingDataSource(DataSource target) {
+            this.target = target;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            final Connection physical = target.getConnection();
+            opened.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if(method.getName().equals("isValid")) validations.incrementAndGet();
+                        try{
+                            return method.invoke(physical, args);
+                        }catch (InvocationTargetException e){
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+    }
+}
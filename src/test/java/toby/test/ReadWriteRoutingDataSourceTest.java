@@ -0,0 +1,138 @@
+package toby.test;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import toby.user.dao.ReadWriteRoutingDataSource;
+import toby.user.dao.UserDaoJdbc;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// primary와 replica 역할을 하는 두 H2 메모리 DB에 서로 다른 값을 넣어 두고 어느 쪽에서 읽었는지 확인한다.
+public class ReadWriteRoutingDataSourceTest {
+    private DataSource primary;
+    private DataSource replica1;
+    private DataSource replica2;
+
+    @BeforeEach
+    public void setUp(){
+        primary = database("primary");
+        replica1 = database("replica1");
+        replica2 = database("replica2");
+    }
+
+    @Test
+    public void routeReadOnlyTransactionToReplica(){
+        ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource(primary, Arrays.asList(replica1));
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        DefaultTransactionDefinition readOnly = new DefaultTransactionDefinition();
+        readOnly.setReadOnly(true);
+        TransactionStatus status = transactionManager.getTransaction(readOnly);
+        assertThat(source(jdbcTemplate)).isEqualTo("replica1");
+        transactionManager.commit(status);
+
+        status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        jdbcTemplate.update("update source set name = ?", "written");
+        assertThat(source(jdbcTemplate)).isEqualTo("written");
+        transactionManager.commit(status);
+
+        assertThat(source(jdbcTemplate)).isEqualTo("written");
+        assertThat(source(new JdbcTemplate(replica1))).isEqualTo("replica1");
+    }
+
+    @Test
+    public void balanceLeastInFlight() throws Exception {
+        ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource(primary, Arrays.asList(replica1, replica2));
+        routingDataSource.setBalancing(ReadWriteRoutingDataSource.Balancing.LEAST_IN_FLIGHT);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        DefaultTransactionDefinition readOnly = new DefaultTransactionDefinition();
+        readOnly.setReadOnly(true);
+        TransactionStatus status = transactionManager.getTransaction(readOnly);
+        try{
+            Connection c1 = routingDataSource.getConnection();
+            Connection c2 = routingDataSource.getConnection();
+            assertThat(routingDataSource.getInFlight(0)).isEqualTo(1);
+            assertThat(routingDataSource.getInFlight(1)).isEqualTo(1);
+
+            c1.close();
+            c1.close();
+            assertThat(routingDataSource.getInFlight(0) + routingDataSource.getInFlight(1)).isEqualTo(1);
+            c2.close();
+            assertThat(routingDataSource.getInFlight(0) + routingDataSource.getInFlight(1)).isEqualTo(0);
+        }finally{
+            transactionManager.commit(status);
+        }
+    }
+
+    // 같은 id의 사용자를 DB마다 다른 이름으로 넣어 두고, UserDaoJdbc의 조회가 어느 DB로 가는지 확인한다.
+    @Test
+    public void routeDaoReads(){
+        DataSource primaryUsers = TestDatabase.create("routing_dao_primary");
+        DataSource replicaUsers = TestDatabase.create("routing_dao_replica");
+        ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource(primaryUsers, Arrays.asList(replicaUsers));
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        UserDaoJdbc userDao = new UserDaoJdbc();
+        userDao.setDataSource(dataSource);
+        userDao.setReadDataSource(routingDataSource.getReadDataSource());
+        userDao.add(new User("gyumee", "primary", "springno1", Level.BASIC, 1, 0, "gyumee@email.com"));
+        directDao(replicaUsers).add(new User("gyumee", "replica", "springno1", Level.BASIC, 1, 0, "gyumee@email.com"));
+
+        // 트랜잭션 밖의 쓰기는 primary로, 조회는 replica로 간다.
+        assertThat(directDao(primaryUsers).get("gyumee").getName()).isEqualTo("primary");
+        assertThat(userDao.get("gyumee").getName()).isEqualTo("replica");
+        assertThat(userDao.getCount()).isEqualTo(1);
+
+        DefaultTransactionDefinition readOnly = new DefaultTransactionDefinition();
+        readOnly.setReadOnly(true);
+        TransactionStatus status = transactionManager.getTransaction(readOnly);
+        assertThat(userDao.get("gyumee").getName()).isEqualTo("replica");
+        transactionManager.commit(status);
+
+        // 쓰기 트랜잭션 안에서는 방금 쓴 값을 primary에서 읽는다.
+        status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        User user = userDao.get("gyumee");
+        user.setName("written");
+        userDao.update(user);
+        assertThat(userDao.get("gyumee").getName()).isEqualTo("written");
+        transactionManager.commit(status);
+        assertThat(userDao.get("gyumee").getName()).isEqualTo("replica");
+    }
+
+    private UserDaoJdbc directDao(DataSource dataSource){
+        UserDaoJdbc userDao = new UserDaoJdbc();
+        userDao.setDataSource(dataSource);
+        return userDao;
+    }
+
+    private String source(JdbcTemplate jdbcTemplate){
+        return jdbcTemplate.queryForObject("select name from source", String.class);
+    }
+
+    private DataSource database(String name){
+        DataSource dataSource = new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:routing_" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("drop table if exists source");
+        jdbcTemplate.update("create table source (name varchar(20))");
+        jdbcTemplate.update("insert into source values (?)", name);
+        return dataSource;
+    }
+}
@@ -0,0 +1,121 @@
+package toby.test;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import toby.user.dao.ColumnarUserDao;
+import toby.user.dao.ShardedUserDao;
+import toby.user.dao.UserDao;
+import toby.user.dao.UserDaoJdbc;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 세 개의 샤드로 나눈 ShardedUserDao가 하나의 UserDao와 같은 계약을 지키는지 확인한다.
+// 작은 페이지 크기로 샤드 경계와 페이지 경계를 함께 거치게 한다.
+public class ShardedUserDaoTest extends UserDaoTest {
+    @Override
+    protected UserDao createDao() {
+        return shardedDao();
+    }
+
+    @Override
+    protected PlatformTransactionManager createTransactionManager() {
+        return null;
+    }
+
+    // partitionSize가 샤드 수보다 작으면 모든 id가 후보가 되어 하나의 UserDao와 같은 경계가 나온다.
+    @Test
+    public void exactIdBoundariesForSmallPartitions() {
+        ShardedUserDao sharded = shardedDao();
+        ColumnarUserDao single = new ColumnarUserDao();
+        List<User> users = users(30);
+        sharded.addAll(users);
+        single.addAll(users);
+
+        assertThat(sharded.getIdBoundaries(2)).isEqualTo(single.getIdBoundaries(2));
+        sharded.close();
+    }
+
+    // 경계로 나눈 구간이 모든 사용자를 한 번씩 덮고, 구간 크기가 partitionSize에서 크게 벗어나지 않는다.
+    @Test
+    public void idBoundariesCoverAllUsers() {
+        ShardedUserDao sharded = shardedDao();
+        sharded.addAll(users(300));
+
+        List<String> boundaries = sharded.getIdBoundaries(30);
+        assertThat(boundaries.size()).isBetween(7, 13);
+
+        int total = 0;
+        String fromId = null;
+        List<String> toIds = new ArrayList<>(boundaries);
+        toIds.add(null);
+        for(String toId : toIds){
+            total += sharded.getAllBetween(fromId, toId).size();
+            fromId = toId;
+        }
+        assertThat(total).isEqualTo(300);
+        sharded.close();
+    }
+
+    @Test
+    public void getAllBetweenMergesShardsInIdOrder() {
+        ShardedUserDao sharded = shardedDao();
+        ColumnarUserDao single = new ColumnarUserDao();
+        List<User> users = users(50);
+        sharded.addAll(users);
+        single.addAll(users);
+
+        assertThat(ids(sharded.getAllBetween("user010", "user040"))).isEqualTo(ids(single.getAllBetween("user010", "user040")));
+        assertThat(ids(sharded.getAll())).isEqualTo(ids(single.getAll()));
+        sharded.close();
+    }
+
+    // 샤드 스레드에서 트랜잭션 없이 불려도 샤드마다 잠근 행과 올린 행이 같다.
+    @Test
+    public void upgradeLevelsOnJdbcShards() {
+        List<UserDao> shards = new ArrayList<>();
+        for(int i = 0; i < 2; i++){
+            UserDaoJdbc shard = new UserDaoJdbc();
+            shard.setDataSource(TestDatabase.create("sharded_upgrade_" + i));
+            shards.add(shard);
+        }
+        ShardedUserDao sharded = new ShardedUserDao(shards);
+        List<User> users = users(10);
+        for(int i = 0; i < 10; i += 2) users.get(i).setLogin(50);
+        sharded.addAll(users);
+
+        List<User> upgraded = sharded.upgradeLevels(Level.BASIC, 50, 0);
+
+        assertThat(ids(upgraded)).containsExactly("user000", "user002", "user004", "user006", "user008");
+        assertThat(sharded.getCountsByLevel().get(Level.SILVER)).isEqualTo(5L);
+        assertThat(sharded.get("user001").getLevel()).isEqualTo(Level.BASIC);
+        sharded.close();
+    }
+
+    private ShardedUserDao shardedDao() {
+        ShardedUserDao dao = new ShardedUserDao(Arrays.<UserDao>asList(
+                new ColumnarUserDao(), new ColumnarUserDao(), new ColumnarUserDao()));
+        dao.setPageSize(1);
+        return dao;
+    }
+
+    private List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            String id = String.format("user%03d", i);
+            users.add(new User(id, "사용자" + i, "p", Level.BASIC, 1, 0, id + "@email.com"));
+        }
+        return users;
+    }
+
+    private List<String> ids(List<User> users) {
+        List<String> ids = new ArrayList<>(users.size());
+        for(User user : users) ids.add(user.getId());
+        return ids;
+    }
+}
@@ -0,0 +1,35 @@
+package toby.test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+
+import javax.sql.DataSource;
+
+// 테스트마다 따로 쓰는 H2 메모리 DB. MySQL 호환 모드로 실제 스키마와 같은 SQL을 실행한다.
+public class TestDatabase {
+    public static DataSource create(String name) {
+        DataSource dataSource = new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        createUsersSchema(dataSource);
+        return dataSource;
+    }
+
+    public static void createUsersSchema(DataSource dataSource) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("drop table if exists users");
+        jdbcTemplate.update("create table users (" +
+                "id varchar(20) primary key, name varchar(20) not null, password varchar(20) not null, " +
+                "level tinyint not null default 1, login int not null default 0, recommend int not null default 0, " +
+                "email varchar(100))");
+    }
+
+    public static void createMailOutboxSchema(DataSource dataSource) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("drop table if exists mail_outbox");
+        jdbcTemplate.update("create table mail_outbox (" +
+                "id bigint not null auto_increment primary key, recipient varchar(100) not null, sender varchar(100), " +
+                "subject varchar(200), text varchar(2000), attempts int not null default 0, " +
+                "next_attempt_at timestamp not null default current_timestamp, " +
+                "created_at timestamp not null default current_timestamp, delivered_at timestamp null)");
+    }
+}
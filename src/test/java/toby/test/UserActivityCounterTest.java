@@ -0,0 +1,126 @@
+package toby.test;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import toby.user.dao.ColumnarUserDao;
+import toby.user.dao.UserDaoJdbc;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+import toby.user.domain.UserActivity;
+import toby.user.service.UserActivityCounter;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class UserActivityCounterTest {
+    private User user1;
+    private User user2;
+
+    @BeforeEach
+    public void setUp(){
+        user1 = new User("gyumee", "박성철", "springno1", Level.BASIC, 1, 0, "gyumee@email.com");
+        user2 = new User("leegw700", "이길원", "springno2", Level.SILVER, 55, 10, "leegw700@email.com");
+    }
+
+    @Test
+    public void flushAppliesAccumulatedIncrements(){
+        ColumnarUserDao userDao = new ColumnarUserDao();
+        userDao.addAll(Arrays.asList(user1, user2));
+
+        UserActivityCounter counter = new UserActivityCounter();
+        counter.setUserDao(userDao);
+        counter.recordLogin(user1.getId());
+        counter.recordLogin(user1.getId());
+        counter.recordRecommend(user2.getId());
+        assertThat(counter.getPendingIncrements()).isEqualTo(3L);
+
+        assertThat(counter.flush()).isEqualTo(2);
+        assertThat(counter.getPendingIncrements()).isEqualTo(0L);
+        assertThat(userDao.get(user1.getId()).getLogin()).isEqualTo(3);
+        assertThat(userDao.get(user2.getId()).getRecommend()).isEqualTo(11);
+        assertThat(counter.flush()).isEqualTo(0);
+    }
+
+    // 실패한 flush의 증가분은 되돌려 놓았다가 다음 flush에 한 번만 반영한다.
+    @Test
+    public void restoreIncrementsWhenFlushFails(){
+        FailingUserDao userDao = new FailingUserDao();
+        userDao.addAll(Arrays.asList(user1, user2));
+
+        UserActivityCounter counter = new UserActivityCounter();
+        counter.setUserDao(userDao);
+        counter.setMaxPendingIncrements(1);
+        userDao.failing = true;
+        counter.recordLogin(user1.getId());
+        counter.recordRecommend(user2.getId());
+
+        assertThrows(TestDaoException.class, counter::flush);
+        assertThat(counter.getPendingIncrements()).isEqualTo(2L);
+        assertThat(userDao.get(user1.getId()).getLogin()).isEqualTo(1);
+
+        userDao.failing = false;
+        counter.flush();
+        assertThat(counter.getPendingIncrements()).isEqualTo(0L);
+        assertThat(userDao.get(user1.getId()).getLogin()).isEqualTo(2);
+        assertThat(userDao.get(user2.getId()).getRecommend()).isEqualTo(11);
+    }
+
+    // 첫 묶음을 DB에 보낸 뒤 실패해도 트랜잭션이 롤백되므로, 재시도에서 같은 증가분이 두 번 더해지지 않는다.
+    @Test
+    public void rollbackPartiallyAppliedFlush(){
+        DataSource dataSource = TestDatabase.create("activity_counter");
+        PartiallyFailingUserDao userDao = new PartiallyFailingUserDao();
+        userDao.setDataSource(dataSource);
+        userDao.setBatchSize(1);
+        userDao.addAll(Arrays.asList(user1, user2));
+
+        UserActivityCounter counter = new UserActivityCounter();
+        counter.setUserDao(userDao);
+        counter.setTransactionManager(new DataSourceTransactionManager(dataSource));
+        counter.recordLogin(user1.getId());
+        counter.recordLogin(user2.getId());
+
+        userDao.failing = true;
+        assertThrows(TestDaoException.class, counter::flush);
+        assertThat(userDao.get(user1.getId()).getLogin()).isEqualTo(1);
+        assertThat(userDao.get(user2.getId()).getLogin()).isEqualTo(55);
+
+        userDao.failing = false;
+        counter.flush();
+        assertThat(userDao.get(user1.getId()).getLogin()).isEqualTo(2);
+        assertThat(userDao.get(user2.getId()).getLogin()).isEqualTo(56);
+    }
+
+    static class FailingUserDao extends ColumnarUserDao {
+        volatile boolean failing;
+
+        @Override
+        public void incrementCounts(List<UserActivity> activities) {
+            if(failing) throw new TestDaoException();
+            super.incrementCounts(activities);
+        }
+    }
+
+    // 첫 사용자의 증가분을 반영한 뒤 실패한다.
+    static class PartiallyFailingUserDao extends UserDaoJdbc {
+        volatile boolean failing;
+
+        @Override
+        public void incrementCounts(List<UserActivity> activities) {
+            if(!failing){
+                super.incrementCounts(activities);
+                return;
+            }
+            super.incrementCounts(activities.subList(0, 1));
+            throw new TestDaoException();
+        }
+    }
+
+    static class TestDaoException extends RuntimeException {
+    }
+}
@@ -1,6 +1,7 @@
 package toby.test;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,18 +10,26 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import toby.user.dao.DaoFactory;
 import toby.user.dao.UserDao;
 import toby.user.dao.UserDaoJdbc;
 import toby.user.domain.Level;
 import toby.user.domain.User;
+import toby.user.domain.UserActivity;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 @ExtendWith(SpringExtension.class)
-@ContextConfiguration(locations = "/applicationContext.xml")
+@ContextConfiguration(classes = DaoFactory.class)
 public class UserDaoTest {
     @Autowired
     private ApplicationContext context;
@@ -33,12 +42,23 @@ public class UserDaoTest {
 
     @BeforeEach
     public void setUp(){
-        this.dao = context.getBean("userDao", UserDaoJdbc.class);
+        this.dao = createDao();
 
         this.user1 = new User("gyumee", "박성철", "springno1", Level.BASIC, 1, 0, "gyumee@email.com");
         this.user2 = new User("leegw700", "이길원", "springno2", Level.SILVER, 55, 10, "leegw700@email.com");
         this.user3 = new User("bumjin", "박범진", "springno3", Level.GOLD, 100, 40, "bumjin@email.com");
     }
+
+    // 다른 UserDao 구현도 같은 테스트를 통과하는지 확인할 수 있도록 하위 클래스에서 바꿔 끼운다.
+    protected UserDao createDao(){
+        return context.getBean("userDao", UserDaoJdbc.class);
+    }
+
+    // createDao()의 DAO가 쓰는 DataSource의 트랜잭션 매니저. 트랜잭션이 없는 구현은 null을 돌려준다.
+    protected PlatformTransactionManager createTransactionManager(){
+        return context.getBean(PlatformTransactionManager.class);
+    }
+
     @Test
     public void addAndGet() throws SQLException {
         dao.deleteAll();
@@ -107,6 +127,19 @@ public class UserDaoTest {
         checkSameUser(user2, users3.get(2));
     }
 
+    @Test
+    public void forEach(){
+        dao.deleteAll();
+        dao.addAll(Arrays.asList(user1, user2, user3));
+
+        List<User> users = new ArrayList<>();
+        dao.forEach(users::add);
+        assertThat(users.size()).isEqualTo(3);
+        checkSameUser(user3, users.get(0));
+        checkSameUser(user1, users.get(1));
+        checkSameUser(user2, users.get(2));
+    }
+
     @Test
     public void update(){
         dao.deleteAll();
@@ -127,6 +160,164 @@ public class UserDaoTest {
         checkSameUser(user2,user2same);
     }
 
+    @Test
+    public void addAll(){
+        dao.deleteAll();
+
+        dao.addAll(Arrays.asList(user1, user2, user3));
+        assertThat(dao.getCount()).isEqualTo(3);
+
+        List<User> users = dao.getAll();
+        checkSameUser(user3, users.get(0));
+        checkSameUser(user1, users.get(1));
+        checkSameUser(user2, users.get(2));
+    }
+
+    @Test
+    public void updateAll(){
+        dao.deleteAll();
+
+        dao.add(user1);
+        dao.add(user2);
+        dao.add(user3);
+
+        user1.setLevel(Level.SILVER);
+        user1.setLogin(50);
+        user2.setLevel(Level.GOLD);
+        user2.setRecommend(30);
+        dao.updateAll(Arrays.asList(user1, user2));
+
+        checkSameUser(user1, dao.get(user1.getId()));
+        checkSameUser(user2, dao.get(user2.getId()));
+        checkSameUser(user3, dao.get(user3.getId()));
+    }
+
+    // 업그레이드 대상을 읽은 뒤에 더해진 증가분이 level 갱신으로 덮어써지지 않는다.
+    @Test
+    public void updateLevelsKeepsIncrements(){
+        dao.deleteAll();
+        dao.add(user1);
+        dao.add(user2);
+
+        User snapshot = dao.get(user1.getId());
+        dao.incrementCounts(Arrays.asList(new UserActivity(user1.getId(), 5, 2)));
+        snapshot.setLevel(Level.SILVER);
+        dao.updateLevels(Arrays.asList(snapshot));
+
+        User updated = dao.get(user1.getId());
+        assertThat(updated.getLevel()).isEqualTo(Level.SILVER);
+        assertThat(updated.getLogin()).isEqualTo(user1.getLogin() + 5);
+        assertThat(updated.getRecommend()).isEqualTo(user1.getRecommend() + 2);
+        checkSameUser(user2, dao.get(user2.getId()));
+    }
+
+    @Test
+    public void incrementCounts(){
+        dao.deleteAll();
+        dao.addAll(Arrays.asList(user1, user2, user3));
+
+        dao.incrementCounts(Arrays.asList(
+                new UserActivity(user1.getId(), 3, 0),
+                new UserActivity(user2.getId(), 1, 2),
+                new UserActivity("unknown_id", 5, 5)));
+
+        assertThat(dao.get(user1.getId()).getLogin()).isEqualTo(user1.getLogin() + 3);
+        assertThat(dao.get(user1.getId()).getRecommend()).isEqualTo(user1.getRecommend());
+        assertThat(dao.get(user2.getId()).getLogin()).isEqualTo(user2.getLogin() + 1);
+        assertThat(dao.get(user2.getId()).getRecommend()).isEqualTo(user2.getRecommend() + 2);
+        checkSameUser(user3, dao.get(user3.getId()));
+        assertThat(dao.getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void upgradeLevels(){
+        dao.deleteAll();
+
+        dao.add(user1);
+        dao.add(user2);
+        dao.add(user3);
+
+        List<User> upgraded = dao.upgradeLevels(Level.SILVER, 0, 10);
+        assertThat(upgraded.size()).isEqualTo(1);
+        assertThat(upgraded.get(0).getId()).isEqualTo(user2.getId());
+        assertThat(upgraded.get(0).getLevel()).isEqualTo(Level.GOLD);
+
+        assertThat(dao.get(user1.getId()).getLevel()).isEqualTo(Level.BASIC);
+        assertThat(dao.get(user2.getId()).getLevel()).isEqualTo(Level.GOLD);
+        assertThat(dao.upgradeLevels(Level.BASIC, 50, 0).size()).isEqualTo(0);
+    }
+
+    // 조건에 맞는 사용자만 한 번에 올리고, 올라간 사용자를 id 순서로 돌려준다.
+    @Test
+    public void upgradeMatchingUsersInOneStatement(){
+        dao.deleteAll();
+        dao.addAll(Arrays.asList(user1,
+                new User("madnite1", "이상호", "springno4", Level.BASIC, 80, 0, "madnite1@email.com"),
+                new User("erwins", "신승한", "springno5", Level.BASIC, 49, 0, "erwins@email.com"),
+                new User("joytouch", "강명성", "springno6", Level.BASIC, 50, 0, "joytouch@email.com")));
+
+        List<User> upgraded = dao.upgradeLevels(Level.BASIC, 50, 0);
+        assertThat(upgraded.size()).isEqualTo(2);
+        assertThat(upgraded.get(0).getId()).isEqualTo("joytouch");
+        assertThat(upgraded.get(1).getId()).isEqualTo("madnite1");
+        assertThat(upgraded.get(1).getLevel()).isEqualTo(Level.SILVER);
+
+        assertThat(dao.get(user1.getId()).getLevel()).isEqualTo(Level.BASIC);
+        assertThat(dao.get("erwins").getLevel()).isEqualTo(Level.BASIC);
+        assertThat(dao.get("joytouch").getLevel()).isEqualTo(Level.SILVER);
+        assertThat(dao.get("madnite1").getLevel()).isEqualTo(Level.SILVER);
+        assertThat(dao.getCountsByLevel().get(Level.SILVER)).isEqualTo(2L);
+    }
+
+    // 롤백하면 UPDATE도 함께 되돌아간다.
+    @Test
+    public void rollbackUpgrade(){
+        PlatformTransactionManager transactionManager = createTransactionManager();
+        Assumptions.assumeTrue(transactionManager != null, "트랜잭션을 지원하지 않는 UserDao");
+        dao.deleteAll();
+        dao.add(user1);
+        dao.add(new User("joytouch", "강명성", "springno6", Level.BASIC, 50, 0, "joytouch@email.com"));
+
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        assertThat(dao.upgradeLevels(Level.BASIC, 50, 0).size()).isEqualTo(1);
+        transactionManager.rollback(status);
+
+        assertThat(dao.get("joytouch").getLevel()).isEqualTo(Level.BASIC);
+    }
+
+    @Test
+    public void rejectUpgradeFromGold(){
+        Assertions.assertThrows(IllegalArgumentException.class, () ->
+                dao.upgradeLevels(Level.GOLD, 0, 0));
+    }
+
+    @Test
+    public void getCountsByLevel(){
+        dao.deleteAll();
+        dao.addAll(Arrays.asList(user1, user2, user3));
+
+        EnumMap<Level, Long> counts = dao.getCountsByLevel();
+        assertThat(counts.get(Level.BASIC)).isEqualTo(1L);
+        assertThat(counts.get(Level.SILVER)).isEqualTo(1L);
+        assertThat(counts.get(Level.GOLD)).isEqualTo(1L);
+
+        dao.deleteAll();
+        assertThat(dao.getCountsByLevel().get(Level.SILVER)).isEqualTo(0L);
+    }
+
+    @Test
+    public void getUpgradeCandidates(){
+        dao.deleteAll();
+        dao.addAll(Arrays.asList(user1, user2, user3));
+
+        List<User> candidates = dao.getUpgradeCandidates(Level.SILVER, 0, 10, 10);
+        assertThat(candidates.size()).isEqualTo(1);
+        checkSameUser(candidates.get(0), user2);
+
+        assertThat(dao.getUpgradeCandidates(Level.SILVER, 0, 11, 10).size()).isEqualTo(0);
+        assertThat(dao.getUpgradeCandidates(Level.BASIC, 0, 0, 0).size()).isEqualTo(0);
+    }
+
     private void checkSameUser(User user1, User user2){
         assertThat(user1.getId()).isEqualTo(user2.getId());
         assertThat(user1.getName()).isEqualTo(user2.getName());
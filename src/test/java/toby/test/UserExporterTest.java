@@ -0,0 +1,102 @@
+package toby.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import toby.user.dao.ColumnarUserDao;
+import toby.user.dao.UserDao;
+import toby.user.dao.UserDaoJdbc;
+import toby.user.domain.Level;
+import toby.user.domain.User;
+import toby.user.service.UserExporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class UserExporterTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void exportCsv() throws Exception {
+        UserExporter exporter = exporter(UserExporter.Format.CSV, false);
+        Path target = dir.resolve("users.csv");
+
+        assertThat(exporter.export(target)).isEqualTo(2L);
+        assertThat(new String(Files.readAllBytes(target), StandardCharsets.UTF_8)).isEqualTo(
+                "id,name,level,login,recommend,email\n" +
+                "bumjin,\"박, \"\"범진\"\"\",GOLD,100,40,bumjin@email.com\n" +
+                "gyumee,박성철,BASIC,1,0,gyumee@email.com\n");
+    }
+
+    @Test
+    public void exportGzippedNdjson() throws Exception {
+        UserExporter exporter = exporter(UserExporter.Format.NDJSON, true);
+        Path target = dir.resolve("users.ndjson.gz");
+
+        assertThat(exporter.export(target)).isEqualTo(2L);
+        assertThat(gunzip(target)).isEqualTo(
+                "{\"id\":\"bumjin\",\"name\":\"박, \\\"범진\\\"\",\"level\":\"GOLD\",\"login\":100,\"recommend\":40,\"email\":\"bumjin@email.com\"}\n" +
+                "{\"id\":\"gyumee\",\"name\":\"박성철\",\"level\":\"BASIC\",\"login\":1,\"recommend\":0,\"email\":\"gyumee@email.com\"}\n");
+    }
+
+    // UserDaoJdbc.forEach()의 커서를 따라 읽어도 같은 결과가 나와야 한다.
+    @Test
+    public void exportFromJdbcCursor() throws Exception {
+        UserDaoJdbc userDao = new UserDaoJdbc();
+        userDao.setDataSource(TestDatabase.create("user_exporter"));
+        userDao.setFetchSize(1);
+        UserExporter exporter = exporter(userDao, UserExporter.Format.CSV, false);
+        Path target = dir.resolve("users.csv");
+
+        assertThat(exporter.export(target)).isEqualTo(2L);
+        assertThat(new String(Files.readAllBytes(target), StandardCharsets.UTF_8)).isEqualTo(
+                "id,name,level,login,recommend,email\n" +
+                "bumjin,\"박, \"\"범진\"\"\",GOLD,100,40,bumjin@email.com\n" +
+                "gyumee,박성철,BASIC,1,0,gyumee@email.com\n");
+    }
+
+    // 한 문자도 담지 못하는 버퍼는 내보내기가 끝나지 않으므로 설정할 때 거부한다.
+    @Test
+    public void rejectTooSmallBufferSize() throws Exception {
+        UserExporter exporter = exporter(UserExporter.Format.CSV, false);
+
+        assertThrows(IllegalArgumentException.class, () -> exporter.setBufferSize(3));
+        exporter.setBufferSize(4);
+        assertThat(exporter.export(dir.resolve("users.csv"))).isEqualTo(2L);
+    }
+
+    private UserExporter exporter(UserExporter.Format format, boolean gzip) {
+        return exporter(new ColumnarUserDao(), format, gzip);
+    }
+
+    // 버퍼보다 긴 줄도 여러 번 나눠 내보내 온전히 써야 한다.
+    private UserExporter exporter(UserDao userDao, UserExporter.Format format, boolean gzip) {
+        userDao.addAll(Arrays.asList(
+                new User("gyumee", "박성철", "springno1", Level.BASIC, 1, 0, "gyumee@email.com"),
+                new User("bumjin", "박, \"범진\"", "springno3", Level.GOLD, 100, 40, "bumjin@email.com")));
+
+        UserExporter exporter = new UserExporter();
+        exporter.setUserDao(userDao);
+        exporter.setFormat(format);
+        exporter.setGzip(gzip);
+        exporter.setBufferSize(16);
+        return exporter;
+    }
+
+    private String gunzip(Path path) throws Exception {
+        try(InputStream in = new GZIPInputStream(Files.newInputStream(path))){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            for(int n; (n = in.read(buf)) > 0; ) out.write(buf, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -12,24 +12,37 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import toby.user.dao.DaoFactory;
+import toby.user.dao.UserChangeTracker;
 import toby.user.dao.UserDao;
 import toby.user.domain.Level;
 import toby.user.domain.User;
+import toby.user.domain.UserActivity;
+import toby.user.service.PartitionResult;
+import toby.user.service.TxProxyFactoryBean;
+import toby.user.service.UserService;
 import toby.user.service.UserServiceImpl;
 import toby.user.service.UserServiceTx;
 
 import javax.sql.DataSource;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Properties;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 import static toby.user.service.UserServiceImpl.MIN_LOGCOUNT_FOR_SILVER;
 import static toby.user.service.UserServiceImpl.MIN_RECCOMEND_FOR_GOLD;
 
 @ExtendWith(SpringExtension.class)
-@ContextConfiguration(locations = "/applicationContext.xml")
+@ContextConfiguration(classes = DaoFactory.class)
 public class UserServiceTest {
     @Autowired
     PlatformTransactionManager transactionManager;
@@ -49,10 +62,12 @@ public class UserServiceTest {
     List<User> users;
 
     // UserService의 테스트용 대역 클래스
+    // 업그레이드를 한 건씩 바로 DB에 반영하므로, 예외가 나는 시점에는 앞선 사용자의 변경이 이미 DB에 쓰여 있다.
     static class TestUserService extends UserServiceImpl {
         private String id;
         private TestUserService(String id){
             this.id = id;
+            setUpdateBatchSize(1);
         }
 
         @Override
@@ -118,11 +133,166 @@ public class UserServiceTest {
         assertThat(request.get(1)).isEqualTo(users.get(3).getEmail());
     }
 
+    @Test
+    @DirtiesContext
+    public void upgradeLevelsByPage() throws Exception {
+        UserServiceImpl userServiceImpl = new UserServiceImpl();
+        userServiceImpl.setTransactionManager(transactionManager);
+
+        MockUserDao mockUserDao = new MockUserDao(this.users);
+        userServiceImpl.setUserDao(mockUserDao);
+
+        MockMailSender mockMailSender = new MockMailSender();
+        userServiceImpl.setMailSender(mockMailSender);
+
+        userServiceImpl.upgradeLevelsByPage(2);
+
+        List<User> updated = mockUserDao.getUpdated();
+        assertThat(updated.size()).isEqualTo(2);
+        checkUserAndLevel(updated.get(0), "joytouch", Level.SILVER);
+        checkUserAndLevel(updated.get(1), "madnite1", Level.GOLD);
+    }
+
+    // SILVER -> GOLD를 먼저 처리하므로 한 번의 실행에서 BASIC 사용자가 GOLD까지 오르지 않는다.
+    @Test
+    @DirtiesContext
+    public void upgradeLevelsInDatabase() throws Exception {
+        UserServiceImpl userServiceImpl = new UserServiceImpl();
+        users.get(1).setRecommend(MIN_RECCOMEND_FOR_GOLD);
+        MockUserDao mockUserDao = new MockUserDao(this.users);
+        userServiceImpl.setUserDao(mockUserDao);
+        MockMailSender mockMailSender = new MockMailSender();
+        userServiceImpl.setMailSender(mockMailSender);
+
+        userServiceImpl.upgradeLevelsInDatabase();
+
+        List<User> updated = mockUserDao.getUpdated();
+        assertThat(updated.size()).isEqualTo(2);
+        checkUserAndLevel(updated.get(0), "madnite1", Level.GOLD);
+        checkUserAndLevel(updated.get(1), "joytouch", Level.SILVER);
+        assertThat(mockMailSender.getRequests()).containsExactly(users.get(3).getEmail(), users.get(1).getEmail());
+    }
+
+    // 빈 페이지를 읽고 마지막 원소를 찾다가 IndexOutOfBoundsException이 나기 전에 막는다.
+    @Test
+    public void rejectNonPositivePageSize() {
+        UserServiceImpl userServiceImpl = new UserServiceImpl();
+        userServiceImpl.setTransactionManager(transactionManager);
+        MockUserDao mockUserDao = new MockUserDao(this.users);
+        userServiceImpl.setUserDao(mockUserDao);
+
+        assertThrows(IllegalArgumentException.class, () -> userServiceImpl.upgradeLevelsByPage(0));
+        assertThrows(IllegalArgumentException.class, () -> userServiceImpl.upgradeLevelsIncrementally(-1));
+        assertThat(mockUserDao.getUpdated().size()).isEqualTo(0);
+    }
+
+    // 경계를 구하기 전에 거부하므로 스레드 풀도 만들지 않는다.
+    @Test
+    public void rejectNonPositivePartitionSize() {
+        UserServiceImpl userServiceImpl = new UserServiceImpl();
+        userServiceImpl.setTransactionManager(transactionManager);
+        MockUserDao mockUserDao = new MockUserDao(this.users);
+        userServiceImpl.setUserDao(mockUserDao);
+
+        assertThrows(IllegalArgumentException.class, () -> userServiceImpl.upgradeLevelsInParallel(0));
+        assertThrows(IllegalArgumentException.class, () -> userServiceImpl.upgradeLevelsInParallel(-5));
+        assertThat(mockUserDao.getUpdated().size()).isEqualTo(0);
+    }
+
+    @Test
+    @DirtiesContext
+    public void upgradeLevelsInParallel() throws Exception {
+        UserServiceImpl userServiceImpl = new UserServiceImpl();
+        userServiceImpl.setTransactionManager(transactionManager);
+        userServiceImpl.setExecutor(Runnable::run);
+
+        MockUserDao mockUserDao = new MockUserDao(this.users);
+        userServiceImpl.setUserDao(mockUserDao);
+        userServiceImpl.setMailSender(new MockMailSender());
+
+        List<PartitionResult> results = userServiceImpl.upgradeLevelsInParallel(2);
+
+        assertThat(results.size()).isEqualTo(3);
+        assertThat(results.get(0).getUpgraded()).isEqualTo(0);
+        assertThat(results.get(1).getUpgraded()).isEqualTo(1);
+        assertThat(results.get(2).getUpgraded()).isEqualTo(1);
+
+        List<User> updated = mockUserDao.getUpdated();
+        assertThat(updated.size()).isEqualTo(2);
+        checkUserAndLevel(updated.get(0), "joytouch", Level.SILVER);
+        checkUserAndLevel(updated.get(1), "madnite1", Level.GOLD);
+    }
+
+    // 실패한 구간은 앞서 반영한 변경까지 롤백되고, 다른 구간의 커밋은 남는다.
+    // ant가 더해지면 구간은 [ant, bumjin, erwins], [green, joytouch, madnite1], []이다.
+    @Test
+    public void rollbackOnlyFailedPartition() throws Exception {
+        User ant = new User("ant", "안태", "p6", Level.BASIC, MIN_LOGCOUNT_FOR_SILVER, 0, "ant@email.com");
+        TestUserService testUserService = new TestUserService(users.get(3).getId());
+        testUserService.setUserDao(userDao);
+        testUserService.setMailSender(mailSender);
+        testUserService.setTransactionManager(transactionManager);
+        testUserService.setParallelism(2);
+
+        userDao.deleteAll();
+        for(User user : users) userDao.add(user);
+        userDao.add(ant);
+
+        assertThrows(TestUserServiceException.class, () -> testUserService.upgradeLevelsInParallel(3));
+
+        checkLevelUpgraded(ant, true);
+        checkLevelUpgraded(users.get(1), false);
+        checkLevelUpgraded(users.get(3), false);
+    }
+
+    @Test
+    @DirtiesContext
+    public void upgradeLevelsIncrementally() throws Exception {
+        UserServiceImpl userServiceImpl = new UserServiceImpl();
+        userServiceImpl.setTransactionManager(transactionManager);
+
+        MockUserDao mockUserDao = new MockUserDao(this.users);
+        userServiceImpl.setUserDao(mockUserDao);
+        userServiceImpl.setMailSender(new MockMailSender());
+
+        UserChangeTracker changeTracker = new UserChangeTracker();
+        changeTracker.markDirty(users.get(1).getId());
+        changeTracker.markDirty(users.get(2).getId());
+        userServiceImpl.setChangeTracker(changeTracker);
+
+        userServiceImpl.upgradeLevelsIncrementally(1);
+
+        List<User> updated = mockUserDao.getUpdated();
+        assertThat(updated.size()).isEqualTo(1);
+        checkUserAndLevel(updated.get(0), "joytouch", Level.SILVER);
+        assertThat(changeTracker.size()).isEqualTo(0);
+    }
+
     private void checkUserAndLevel(User updated, String expectedId, Level expectedLevel){
         assertThat(updated.getId()).isEqualTo(expectedId);
         assertThat(updated.getLevel()).isEqualTo(expectedLevel);
     }
 
+    // 트랜잭션 없이 실행하면 예외 전에 반영된 변경이 남는다. 아래 두 테스트가 롤백을 검증한다는 전제를 확인한다.
+    @Test
+    public void upgradeWithoutTransactionLeavesPartialUpdate() throws Exception {
+        TestUserService testUserService = new TestUserService(users.get(3).getId());
+        testUserService.setUserDao(userDao);
+        testUserService.setMailSender(mailSender);
+
+        userDao.deleteAll();
+        for(User user : users) userDao.add(user);
+
+        try{
+            testUserService.upgradeLevels();
+            fail("TestUserServiceException expected");
+        }catch (TestUserServiceException e){
+
+        }
+
+        checkLevelUpgraded(users.get(1), true);
+    }
+
     @Test
     public void upgradeAllorNothing() throws Exception {
         TestUserService testUserService = new TestUserService(users.get(3).getId());
@@ -145,6 +315,63 @@ public class UserServiceTest {
 
         checkLevelUpgraded(users.get(1), false);
     }
+
+    @Test
+    public void upgradeAllorNothingWithProxy() throws Exception {
+        TestUserService testUserService = new TestUserService(users.get(3).getId());
+        testUserService.setUserDao(userDao);
+        testUserService.setMailSender(mailSender);
+
+        // DaoFactory처럼 메소드 이름을 그대로 쓴다. upgrade* 패턴은 묶음마다 커밋하는 ByPage, Incrementally, InParallel까지 감싼다.
+        Properties transactionAttributes = new Properties();
+        transactionAttributes.setProperty("upgradeLevels", "PROPAGATION_REQUIRED");
+        transactionAttributes.setProperty("addAll", "PROPAGATION_REQUIRED");
+
+        TxProxyFactoryBean txProxyFactoryBean = new TxProxyFactoryBean();
+        txProxyFactoryBean.setTarget(testUserService);
+        txProxyFactoryBean.setTransactionManager(transactionManager);
+        txProxyFactoryBean.setServiceInterface(UserService.class);
+        txProxyFactoryBean.setTransactionAttributes(transactionAttributes);
+        UserService txUserService = (UserService) txProxyFactoryBean.getObject();
+
+        userDao.deleteAll();
+        for(User user : users) userDao.add(user);
+
+        try{
+            txUserService.upgradeLevels();
+            fail("TestUserServiceException expected");
+        }catch (TestUserServiceException e){
+
+        }
+
+        checkLevelUpgraded(users.get(1), false);
+    }
+
+    // 이름이 똑같은 항목이 패턴보다 먼저 적용되고, readOnly가 트랜잭션에 전달되며, NONE인 메소드는 트랜잭션 없이 호출된다.
+    @Test
+    public void applyTransactionAttributesByMethodName() throws Exception {
+        TransactionRecordingUserService target = new TransactionRecordingUserService();
+
+        Properties transactionAttributes = new Properties();
+        transactionAttributes.setProperty("upgrade*", "PROPAGATION_REQUIRED");
+        transactionAttributes.setProperty("upgradeLevels", "PROPAGATION_REQUIRED,readOnly");
+        transactionAttributes.setProperty("upgradeLevelsByPage", "NONE");
+
+        TxProxyFactoryBean txProxyFactoryBean = new TxProxyFactoryBean();
+        txProxyFactoryBean.setTarget(target);
+        txProxyFactoryBean.setTransactionManager(transactionManager);
+        txProxyFactoryBean.setServiceInterface(UserService.class);
+        txProxyFactoryBean.setTransactionAttributes(transactionAttributes);
+        UserService txUserService = (UserService) txProxyFactoryBean.getObject();
+
+        txUserService.upgradeLevels();
+        txUserService.upgradeLevelsInDatabase();
+        txUserService.upgradeLevelsByPage(10);
+        txUserService.add(users.get(0));
+
+        assertThat(target.transactions).containsExactly("readOnly", "readWrite", "none", "none");
+    }
+
     private void checkLevelUpgraded(User user, boolean upgraded){
         User userUpdate = userDao.get(user.getId());
         if(upgraded){
@@ -158,6 +385,37 @@ public class UserServiceTest {
         assertThat(userUpdate.getLevel()).isEqualTo(expectedLevel);
     }
 
+    // 호출될 때의 트랜잭션 상태만 기록한다.
+    static class TransactionRecordingUserService extends UserServiceImpl {
+        private List<String> transactions = new ArrayList<>();
+
+        private void record(){
+            if(!TransactionSynchronizationManager.isActualTransactionActive()) transactions.add("none");
+            else if(TransactionSynchronizationManager.isCurrentTransactionReadOnly()) transactions.add("readOnly");
+            else transactions.add("readWrite");
+        }
+
+        @Override
+        public void add(User user) {
+            record();
+        }
+
+        @Override
+        public void upgradeLevels() {
+            record();
+        }
+
+        @Override
+        public void upgradeLevelsByPage(int pageSize) {
+            record();
+        }
+
+        @Override
+        public void upgradeLevelsInDatabase() {
+            record();
+        }
+    }
+
     static class MockMailSender implements MailSender{
         private List<String> requests = new ArrayList<String>();
 
@@ -194,15 +452,66 @@ public class UserServiceTest {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public void addAll(Collection<User> users) {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public User get(String id) {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public List<User> getByIds(Collection<String> ids) {
+            List<User> found = new ArrayList<>();
+            for(User user : this.users){
+                if(ids.contains(user.getId())) found.add(user);
+            }
+            return found;
+        }
+
         public List<User> getAll(){
             return this.users;
         }
 
+        @Override
+        public void forEach(Consumer<? super User> action) {
+            this.users.forEach(action);
+        }
+
+        @Override
+        public List<User> getAllAfter(String id, int limit) {
+            List<User> page = new ArrayList<>();
+            for(User user : this.users){
+                if(id == null || user.getId().compareTo(id) > 0) page.add(user);
+            }
+            page.sort(Comparator.comparing(User::getId));
+            return page.subList(0, Math.min(limit, page.size()));
+        }
+
+        @Override
+        public List<User> getAllBetween(String fromId, String toId) {
+            List<User> range = new ArrayList<>();
+            for(User user : this.users){
+                if((fromId == null || user.getId().compareTo(fromId) > 0)
+                        && (toId == null || user.getId().compareTo(toId) <= 0)) range.add(user);
+            }
+            range.sort(Comparator.comparing(User::getId));
+            return range;
+        }
+
+        @Override
+        public List<String> getIdBoundaries(int partitionSize) {
+            List<String> ids = new ArrayList<>();
+            for(User user : this.users) ids.add(user.getId());
+            ids.sort(Comparator.naturalOrder());
+
+            List<String> boundaries = new ArrayList<>();
+            for(int i = partitionSize - 1; i < ids.size(); i += partitionSize) boundaries.add(ids.get(i));
+            return boundaries;
+        }
+
         @Override
         public void deleteAll() {
             throw new UnsupportedOperationException();
@@ -216,5 +525,47 @@ public class UserServiceTest {
         public void update(User user){
             updated.add(user);
         }
+
+        @Override
+        public void updateAll(List<User> users) {
+            updated.addAll(users);
+        }
+
+        @Override
+        public void updateLevels(List<User> users) {
+            updated.addAll(users);
+        }
+
+        @Override
+        public void incrementCounts(List<UserActivity> activities) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EnumMap<Level, Long> getCountsByLevel() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<User> getUpgradeCandidates(Level level, int minLogin, int minRecommend, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        // UserDaoJdbc처럼 조건에 맞는 사용자를 한꺼번에 다음 레벨로 올리고 id 순서로 돌려준다.
+        @Override
+        public List<User> upgradeLevels(Level level, int minLogin, int minRecommend) {
+            List<User> upgraded = new ArrayList<>();
+            for(User user : this.users){
+                if(user.getLevel() == level && user.getLogin() >= minLogin && user.getRecommend() >= minRecommend){
+                    upgraded.add(user);
+                }
+            }
+            upgraded.sort(Comparator.comparing(User::getId));
+            for(User user : upgraded){
+                user.setLevel(level.nextLevel());
+                updated.add(user);
+            }
+            return upgraded;
+        }
     }
 }